@@ -0,0 +1,189 @@
+package sequencer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+
+import com.sun.management.ThreadMXBean;
+
+import sequencer.PatternEdit.EditType;
+import sequencer.SequencerMain.PlayStatusType;
+import sequencer.SequencerMain.TracksModel;
+
+// plays a busy pattern through the tick path and fails when the ticking thread allocates while doing so.
+// kept out of src so it never ships with the app: java -cp bin-check:bin:lib/core.jar sequencer.AllocationCheck
+public class AllocationCheck
+{
+    private static final int TICKS = 10000;
+    private static final int STEPS = 32;
+    private static final int TRACKS = 8;
+    // far quicker than the clock, but slow enough for the output threads to keep their rings drained
+    private static final long TICK_PAUSE_NANOS = 50000L;
+    // the device time bases resync once a second, the warm up has to see that branch before it is compiled away
+    private static final long WARM_UP_NANOS = 3000000000L;
+    // room for one off work the JVM does on the thread's behalf, a 16 byte object once per pattern loop already needs more
+    private static final long ALLOCATION_BUDGET = 512;
+
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        SequencerMain app = new SequencerMain();
+        SequencerConfig config = new SequencerConfig(TRACKS, STEPS, TRACKS, STEPS, 1, 4, SequencerConfig.MAX_VOICES);
+        SequencerMain.BeatGenerator beats = app.prepareTicks(config, new CheckDevice("check in", false), new CheckDevice("check out", true));
+        TracksModel tracksModel = app.getTracksModel();
+        for(int trackIdx = 0; trackIdx < TRACKS; trackIdx++)
+        {
+            for(int step = trackIdx % 2; step < STEPS; step += 2)
+            {
+                tracksModel.submit(new PatternEdit(EditType.TOGGLE_STEP, trackIdx, step, 0));
+            }
+        }
+        tracksModel.submit(new PatternEdit(EditType.SET_ARPEGGIATOR, 0, 0, 1));
+        app.getPlayStatus().set(PlayStatusType.PLAYING);
+
+        ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // the warm up applies the edits, publishes their snapshots and gets the tick path compiled
+        long tickNr = 0;
+        long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        while(tickNr < TICKS || System.nanoTime() - warmUpEnd < 0)
+        {
+            tickNr = runTicks(beats, tickNr);
+        }
+        long calibration = threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        calibration = before - calibration;
+        runTicks(beats, tickNr);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - calibration;
+        System.out.println("allocated " + allocated + " bytes in " + TICKS + " ticks");
+        System.exit(allocated > ALLOCATION_BUDGET ? 1 : 0);
+    }
+
+    private static long runTicks(SequencerMain.BeatGenerator beats, long firstTick)
+    {
+        for(long tickNr = firstTick; tickNr < firstTick + TICKS; tickNr++)
+        {
+            beats.tick(tickNr, System.nanoTime());
+            LockSupport.parkNanos(TICK_PAUSE_NANOS);
+        }
+        return firstTick + TICKS;
+    }
+
+    // takes whatever is sent and drops it, there is nothing to receive
+    private static class CheckDevice implements MidiDevice
+    {
+        private Info _info;
+        private boolean _output;
+        private boolean _open;
+
+        public CheckDevice(String name, boolean output)
+        {
+            _info = new Info(name, "AllocationCheck", "allocation check device", "1") {};
+            _output = output;
+            _open = false;
+        }
+
+        @Override
+        public Info getDeviceInfo()
+        {
+            return _info;
+        }
+
+        @Override
+        public void open()
+        {
+            _open = true;
+        }
+
+        @Override
+        public void close()
+        {
+            _open = false;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return _open;
+        }
+
+        @Override
+        public long getMicrosecondPosition()
+        {
+            return System.nanoTime() / 1000;
+        }
+
+        @Override
+        public int getMaxReceivers()
+        {
+            return _output ? -1 : 0;
+        }
+
+        @Override
+        public int getMaxTransmitters()
+        {
+            return _output ? 0 : -1;
+        }
+
+        @Override
+        public Receiver getReceiver()
+        {
+            return new Receiver()
+            {
+                @Override
+                public void send(MidiMessage message, long timeStamp)
+                {
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            };
+        }
+
+        @Override
+        public List<Receiver> getReceivers()
+        {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public Transmitter getTransmitter()
+        {
+            return new Transmitter()
+            {
+                private Receiver _receiver;
+
+                @Override
+                public void setReceiver(Receiver receiver)
+                {
+                    _receiver = receiver;
+                }
+
+                @Override
+                public Receiver getReceiver()
+                {
+                    return _receiver;
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            };
+        }
+
+        @Override
+        public List<Transmitter> getTransmitters()
+        {
+            return new ArrayList<>();
+        }
+    }
+}
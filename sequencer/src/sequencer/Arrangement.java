@@ -0,0 +1,132 @@
+package sequencer;
+
+// a song: pattern slots played one after the other, each for a number of bars with its own mutes and tempo
+public class Arrangement
+{
+    public static final int KEEP_TEMPO = 0;
+
+    private int _size;
+    private int[] _slots;
+    private int[] _repeats;
+    private long[] _muteMasks;
+    private int[] _tempos;
+
+    public Arrangement()
+    {
+        this(16);
+    }
+
+    public Arrangement(int capacity)
+    {
+        _size = 0;
+        _slots = new int[capacity];
+        _repeats = new int[capacity];
+        _muteMasks = new long[capacity];
+        _tempos = new int[capacity];
+    }
+
+    public Arrangement copy()
+    {
+        Arrangement copy = new Arrangement(Math.max(1, _size));
+        for(int entryIdx = 0; entryIdx < _size; entryIdx++)
+        {
+            copy.add(_slots[entryIdx], _repeats[entryIdx], _muteMasks[entryIdx], _tempos[entryIdx]);
+        }
+        return copy;
+    }
+
+    public int add(int slot, int repeats, long muteMask, int tempo)
+    {
+        if(_size == _slots.length)
+        {
+            grow();
+        }
+        _slots[_size] = slot;
+        _repeats[_size] = Math.max(1, repeats);
+        _muteMasks[_size] = muteMask;
+        _tempos[_size] = tempo;
+        _size++;
+        return _size - 1;
+    }
+
+    public void setRepeats(int entryIdx, int repeats)
+    {
+        _repeats[entryIdx] = Math.max(1, repeats);
+    }
+
+    public void clear()
+    {
+        _size = 0;
+    }
+
+    public int size()
+    {
+        return _size;
+    }
+
+    public int getSlot(int entryIdx)
+    {
+        return _slots[entryIdx];
+    }
+
+    public int getRepeats(int entryIdx)
+    {
+        return _repeats[entryIdx];
+    }
+
+    public long getMuteMask(int entryIdx)
+    {
+        return _muteMasks[entryIdx];
+    }
+
+    public int getTempo(int entryIdx)
+    {
+        return _tempos[entryIdx];
+    }
+
+    public int getTotalBars()
+    {
+        int bars = 0;
+        for(int entryIdx = 0; entryIdx < _size; entryIdx++)
+        {
+            bars += _repeats[entryIdx];
+        }
+        return bars;
+    }
+
+    private void grow()
+    {
+        int capacity = Math.max(16, _slots.length * 2);
+        int[] slots = new int[capacity];
+        int[] repeats = new int[capacity];
+        long[] muteMasks = new long[capacity];
+        int[] tempos = new int[capacity];
+        System.arraycopy(_slots, 0, slots, 0, _size);
+        System.arraycopy(_repeats, 0, repeats, 0, _size);
+        System.arraycopy(_muteMasks, 0, muteMasks, 0, _size);
+        System.arraycopy(_tempos, 0, tempos, 0, _size);
+        _slots = slots;
+        _repeats = repeats;
+        _muteMasks = muteMasks;
+        _tempos = tempos;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder entries = new StringBuilder();
+        for(int entryIdx = 0; entryIdx < _size; entryIdx++)
+        {
+            if(entryIdx > 0)
+            {
+                entries.append(' ');
+            }
+            entries.append(_slots[entryIdx] + 1).append('x').append(_repeats[entryIdx]);
+            if(_tempos[entryIdx] != KEEP_TEMPO)
+            {
+                entries.append('@').append(_tempos[entryIdx]);
+            }
+        }
+        return entries.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package sequencer;
+
+import javax.sound.midi.MidiDevice;
+
+public class DeviceTimeBase
+{
+    private static final long RESYNC_INTERVAL_NANOS = 1000000000L;
+    private static final long MAX_PLAUSIBLE_OFFSET_NANOS = 1000000000L;
+
+    private MidiDevice _device;
+    private boolean _hasTimestamps;
+    private long _refNanos;
+    private long _refMicros;
+
+    public DeviceTimeBase(MidiDevice device)
+    {
+        _device = device;
+        resync();
+    }
+
+    public void resync()
+    {
+        long before = System.nanoTime();
+        long deviceMicros = _device.getMicrosecondPosition();
+        long after = System.nanoTime();
+        _hasTimestamps = deviceMicros >= 0;
+        _refNanos = before + (after - before) / 2;
+        _refMicros = deviceMicros;
+    }
+
+    public boolean hasTimestamps()
+    {
+        return _hasTimestamps;
+    }
+
+    public long toDeviceMicros(long nanoTime)
+    {
+        if(!_hasTimestamps)
+        {
+            return -1;
+        }
+        if(nanoTime - _refNanos > RESYNC_INTERVAL_NANOS)
+        {
+            // device clocks drift against nanoTime, keep the mapping fresh
+            resync();
+        }
+        return _refMicros + (nanoTime - _refNanos) / 1000;
+    }
+
+    public long toNanoTime(long deviceMicros)
+    {
+        long now = System.nanoTime();
+        if(!_hasTimestamps || deviceMicros < 0)
+        {
+            return now;
+        }
+        if(now - _refNanos > RESYNC_INTERVAL_NANOS)
+        {
+            resync();
+        }
+        long nanoTime = _refNanos + (deviceMicros - _refMicros) * 1000;
+        if(Math.abs(nanoTime - now) > MAX_PLAUSIBLE_OFFSET_NANOS)
+        {
+            // timestamp from a different clock base than getMicrosecondPosition, arrival time is the better guess
+            return now;
+        }
+        return nanoTime;
+    }
+}
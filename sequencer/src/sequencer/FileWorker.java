@@ -0,0 +1,73 @@
+package sequencer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// one long lived thread for file writes, handing it a task from the clock thread is an enqueue and an unpark
+public class FileWorker implements Runnable
+{
+    private ConcurrentLinkedQueue<Runnable> _tasks;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    public FileWorker(String name)
+    {
+        _tasks = new ConcurrentLinkedQueue<>();
+        _running = true;
+        _thread = new Thread(this, name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void submit(Runnable task)
+    {
+        _tasks.add(task);
+        LockSupport.unpark(_thread);
+    }
+
+    @Override
+    public void run()
+    {
+        while(_running)
+        {
+            runTasks();
+            if(_tasks.isEmpty() && _running)
+            {
+                LockSupport.park(this);
+            }
+        }
+        runTasks();
+    }
+
+    private void runTasks()
+    {
+        Runnable task = _tasks.poll();
+        while(task != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException exc)
+            {
+                exc.printStackTrace();
+            }
+            task = _tasks.poll();
+        }
+    }
+
+    // pending writes still finish, the file they go to should not be left behind half done
+    public void close()
+    {
+        _running = false;
+        LockSupport.unpark(_thread);
+        try
+        {
+            _thread.join(2000);
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package sequencer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+// draws into a memory mapped linux framebuffer device, or into a plain file with the same layout
+public class FramebufferRenderer extends SoftwareRenderer
+{
+    private RandomAccessFile _file;
+    private MappedByteBuffer _framebuffer;
+    private int _bytesPerPixel;
+    private int _stride;
+
+    public FramebufferRenderer(File framebufferFile, int width, int height, int bitsPerPixel, int stride) throws IOException
+    {
+        super(width, height);
+        if(bitsPerPixel != 16 && bitsPerPixel != 32)
+        {
+            throw new IOException("Unsupported framebuffer depth: " + bitsPerPixel);
+        }
+        _bytesPerPixel = bitsPerPixel / 8;
+        _stride = stride;
+        _file = new RandomAccessFile(framebufferFile, "rw");
+        _framebuffer = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long)stride * height);
+        _framebuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // geometry comes from system properties, for /dev/fbN devices missing values are read from sysfs
+    public static FramebufferRenderer open(String path) throws IOException
+    {
+        File framebufferFile = new File(path);
+        File sysfsDir = new File("/sys/class/graphics", framebufferFile.getName());
+        int[] virtualSize = parseInts(readSysfs(sysfsDir, "virtual_size", "800,480"));
+        int width = Integer.getInteger("sequencer.framebufferWidth", virtualSize[0]);
+        int height = Integer.getInteger("sequencer.framebufferHeight", virtualSize[1]);
+        int bitsPerPixel = Integer.getInteger("sequencer.framebufferBpp", parseInts(readSysfs(sysfsDir, "bits_per_pixel", "32"))[0]);
+        int stride = Integer.getInteger("sequencer.framebufferStride", parseInts(readSysfs(sysfsDir, "stride", Integer.toString(width * bitsPerPixel / 8)))[0]);
+        System.out.println("framebuffer " + path + ": " + width + "x" + height + ", " + bitsPerPixel + " bpp, stride " + stride);
+        return new FramebufferRenderer(framebufferFile, width, height, bitsPerPixel, stride);
+    }
+
+    @Override
+    public void endDraw()
+    {
+        super.endDraw();
+        flush();
+    }
+
+    // copies only the regions drawn since the last flush
+    public void flush()
+    {
+        for(int damageIdx = 0; damageIdx < getDamageCount(); damageIdx++)
+        {
+            int x0 = getDamage(damageIdx, 0);
+            int y0 = getDamage(damageIdx, 1);
+            int x1 = getDamage(damageIdx, 2);
+            int y1 = getDamage(damageIdx, 3);
+            for(int row = y0; row < y1; row++)
+            {
+                int pixelIdx = row * _width + x0;
+                int offset = row * _stride + x0 * _bytesPerPixel;
+                for(int column = x0; column < x1; column++)
+                {
+                    int color = _pixels[pixelIdx++];
+                    if(_bytesPerPixel == 4)
+                    {
+                        _framebuffer.putInt(offset, color & 0xFFFFFF);
+                    }
+                    else
+                    {
+                        _framebuffer.putShort(offset, (short)(((color >> 8) & 0xF800) | ((color >> 5) & 0x07E0) | ((color >> 3) & 0x001F)));
+                    }
+                    offset += _bytesPerPixel;
+                }
+            }
+        }
+        clearDamage();
+    }
+
+    public void close()
+    {
+        try
+        {
+            _file.close();
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    private static String readSysfs(File sysfsDir, String attribute, String fallback)
+    {
+        File attributeFile = new File(sysfsDir, attribute);
+        if(!attributeFile.canRead())
+        {
+            return fallback;
+        }
+        try
+        {
+            return new String(Files.readAllBytes(attributeFile.toPath()), StandardCharsets.US_ASCII).trim();
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+            return fallback;
+        }
+    }
+
+    private static int[] parseInts(String commaSeparated)
+    {
+        String[] parts = commaSeparated.split(",");
+        int[] values = new int[parts.length];
+        for(int partIdx = 0; partIdx < parts.length; partIdx++)
+        {
+            values[partIdx] = Integer.parseInt(parts[partIdx].trim());
+        }
+        return values;
+    }
+}
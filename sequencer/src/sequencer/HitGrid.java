@@ -0,0 +1,83 @@
+package sequencer;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// uniform grid over the screen, every cell knows the few targets overlapping it
+public class HitGrid<T>
+{
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private int _cellSize;
+    private int _columns;
+    private int _rows;
+    private List<Rectangle> _areas;
+    private List<T> _targets;
+    private int[][] _cellEntries;
+
+    public HitGrid(int width, int height, int cellSize)
+    {
+        _cellSize = cellSize;
+        _columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        _rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        _areas = new ArrayList<>();
+        _targets = new ArrayList<>();
+        _cellEntries = new int[_columns * _rows][];
+        Arrays.fill(_cellEntries, NO_ENTRIES);
+    }
+
+    public void add(Rectangle area, T target)
+    {
+        int entry = _targets.size();
+        _areas.add(area);
+        _targets.add(target);
+        int firstColumn = clamp(area.x / _cellSize, _columns);
+        int lastColumn = clamp((area.x + area.width) / _cellSize, _columns);
+        int firstRow = clamp(area.y / _cellSize, _rows);
+        int lastRow = clamp((area.y + area.height) / _cellSize, _rows);
+        for(int row = firstRow; row <= lastRow; row++)
+        {
+            for(int column = firstColumn; column <= lastColumn; column++)
+            {
+                int cell = row * _columns + column;
+                int[] entries = Arrays.copyOf(_cellEntries[cell], _cellEntries[cell].length + 1);
+                entries[entries.length - 1] = entry;
+                _cellEntries[cell] = entries;
+            }
+        }
+    }
+
+    public void clear()
+    {
+        _areas.clear();
+        _targets.clear();
+        Arrays.fill(_cellEntries, NO_ENTRIES);
+    }
+
+    // the target whose area strictly contains the point, like the buttons' own check, or null
+    public T find(int x, int y)
+    {
+        if(x < 0 || y < 0)
+        {
+            return null;
+        }
+        // areas reaching past the grid are kept in the border cells, so points out there are looked up in those
+        int[] entries = _cellEntries[clamp(y / _cellSize, _rows) * _columns + clamp(x / _cellSize, _columns)];
+        for(int entryIdx = 0; entryIdx < entries.length; entryIdx++)
+        {
+            Rectangle area = _areas.get(entries[entryIdx]);
+            if(x > area.x && x < area.x + area.width && y > area.y && y < area.y + area.height)
+            {
+                return _targets.get(entries[entryIdx]);
+            }
+        }
+        return null;
+    }
+
+    private static int clamp(int cellIdx, int cellCount)
+    {
+        return Math.max(0, Math.min(cellCount - 1, cellIdx));
+    }
+}
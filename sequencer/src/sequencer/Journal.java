@@ -0,0 +1,427 @@
+package sequencer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import sequencer.ProjectData.TrackSettings;
+
+// every edit becomes a fixed size record: type byte, track byte, step short, pattern slot int, value int.
+// records set state instead of flipping it, so replaying some of them twice on top of a newer snapshot is harmless
+public class Journal implements Runnable
+{
+    public static final int STEP_ON = 1;
+    public static final int STEP_OFF = 2;
+    public static final int ADD_NOTE = 3;
+    public static final int SET_GATE = 4;
+    public static final int SET_MAX_STEPS = 5;
+    public static final int SET_MUTE = 6;
+    public static final int SET_NOTE = 7;
+    public static final int REWRITE_NOTE = 8;
+    public static final int SET_CHANNEL = 9;
+    public static final int SET_ARPEGGIATOR = 10;
+    public static final int SELECT_PATTERN = 11;
+    // these never reach the file, they carry an attachment or ask for a snapshot
+    private static final int SET_DEVICE = 100;
+    private static final int SET_ARRANGEMENT = 101;
+    private static final int RESYNC = 102;
+    private static final int COMPACT = 103;
+    private static final int SET_PATTERNS = 104;
+    private static final int READ_SHADOW = 105;
+
+    private static final int RECORD_SIZE = 12;
+    private static final int RING_CAPACITY = 4096;
+    private static final long FLUSH_INTERVAL_NANOS = 100000000L;
+    private static final int COMPACT_AFTER_RECORDS = 16384;
+
+    private Path _journalPath;
+    private Path _projectPath;
+    private int _defaultGate;
+    private ProjectData _shadow;
+    private FileChannel _channel;
+    private ByteBuffer _buffer;
+    private JournalRing _ring;
+    private ConcurrentLinkedQueue<Object> _attachments;
+    private Thread _writerThread;
+    private volatile boolean _running;
+    private volatile boolean _waiting;
+    private volatile boolean _resyncNeeded;
+    private volatile long _records;
+    private volatile long _droppedAttachments;
+    private int _recordsSinceCompaction;
+
+    // the shadow may share pattern stores with the live model, the writer thread copies a shared one before writing it
+    public Journal(Path journalPath, Path projectPath, ProjectData shadow, int defaultGate) throws IOException
+    {
+        _journalPath = journalPath;
+        _projectPath = projectPath;
+        _shadow = shadow;
+        _defaultGate = defaultGate;
+        _channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        _recordsSinceCompaction = (int)(_channel.size() / RECORD_SIZE);
+        _buffer = ByteBuffer.allocateDirect(RING_CAPACITY * RECORD_SIZE);
+        _ring = new JournalRing(RING_CAPACITY);
+        _attachments = new ConcurrentLinkedQueue<>();
+        _running = true;
+        _writerThread = new Thread(this, "journal-" + journalPath.getFileName());
+        _writerThread.setDaemon(true);
+        _writerThread.start();
+    }
+
+    // sequencer thread only, an enqueue and nothing else
+    public void append(int type, int trackIdx, int step, int slot, int value)
+    {
+        int header = (type & 0xFF) << 24 | (trackIdx & 0xFF) << 16 | (step & 0xFFFF);
+        if(!_ring.offer(header, slot, value))
+        {
+            // the shadow missed a record, only a fresh capture of the model can repair it; edits are held back
+            // under back pressure, so only a journal thread stalled for thousands of recorded notes gets here
+            _resyncNeeded = true;
+        }
+        else if(_waiting && _ring.isBackPressured())
+        {
+            LockSupport.unpark(_writerThread);
+        }
+    }
+
+    // the state carrying attachments return false when dropped, the shadow is then repaired by a resync
+    public boolean setDevice(int trackIdx, String deviceName)
+    {
+        return appendAttachment(SET_DEVICE, trackIdx, 0, deviceName);
+    }
+
+    // arrangements are never changed once handed over, the writer thread may keep a reference
+    public boolean setArrangement(Arrangement arrangement)
+    {
+        return appendAttachment(SET_ARRANGEMENT, 0, 0, arrangement);
+    }
+
+    // the stores must be shared, the array must not be the model's
+    public boolean setPatterns(int slot, PatternStore[] trackPatterns)
+    {
+        return appendAttachment(SET_PATTERNS, 0, slot, trackPatterns);
+    }
+
+    // the reader runs on the writer thread and sees every record appended before this one, it must not keep the project;
+    // false means it will never run and the caller has to read the project some other way
+    public boolean readShadow(Consumer<ProjectData> reader)
+    {
+        if(!appendAttachment(READ_SHADOW, 0, 0, reader))
+        {
+            return false;
+        }
+        if(_waiting)
+        {
+            LockSupport.unpark(_writerThread);
+        }
+        return true;
+    }
+
+    public boolean isBackPressured()
+    {
+        return _ring.isBackPressured();
+    }
+
+    public boolean isResyncNeeded()
+    {
+        return _resyncNeeded;
+    }
+
+    public void resync(ProjectData project)
+    {
+        _resyncNeeded = false;
+        appendAttachment(RESYNC, 0, 0, project);
+    }
+
+    public void requestCompaction()
+    {
+        append(COMPACT, 0, 0, 0, 0);
+        if(_waiting)
+        {
+            LockSupport.unpark(_writerThread);
+        }
+    }
+
+    // the attachment is only queued once its record is sure to fit, so records and attachments never get out of step
+    private boolean appendAttachment(int type, int trackIdx, int slot, Object attachment)
+    {
+        if(!_ring.hasRoom())
+        {
+            _droppedAttachments++;
+            if(type != READ_SHADOW)
+            {
+                _resyncNeeded = true;
+            }
+            System.out.println("journal ring full, dropped attachment record " + type + " on " + this);
+            return false;
+        }
+        _attachments.add(attachment);
+        append(type, trackIdx, 0, slot, 0);
+        return true;
+    }
+
+    public long getRecordCount()
+    {
+        return _records;
+    }
+
+    public long getOverflowCount()
+    {
+        return _ring.getOverflows();
+    }
+
+    @Override
+    public void run()
+    {
+        while(_running)
+        {
+            drain();
+            _waiting = true;
+            if(_ring.isEmpty() && _running)
+            {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+            }
+            _waiting = false;
+        }
+        drain();
+        try
+        {
+            _channel.close();
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    private void drain()
+    {
+        boolean compact = false;
+        while(_ring.poll())
+        {
+            int header = _ring.getPolledHeader();
+            int type = header >>> 24;
+            int trackIdx = header >>> 16 & 0xFF;
+            int step = header & 0xFFFF;
+            int slot = _ring.getPolledSlot();
+            int value = _ring.getPolledValue();
+            switch (type)
+            {
+                case SET_DEVICE:
+                    TrackSettings settings = _shadow.getTrackSettings(trackIdx);
+                    if(settings != null)
+                    {
+                        settings.setDeviceName((String)_attachments.poll());
+                    }
+                    compact = true;
+                    break;
+                case SET_ARRANGEMENT:
+                    _shadow.setArrangement((Arrangement)_attachments.poll());
+                    compact = true;
+                    break;
+                case SET_PATTERNS:
+                    PatternStore[] trackPatterns = (PatternStore[])_attachments.poll();
+                    if(slot >= 0 && slot < _shadow.getSlots())
+                    {
+                        _shadow.setPatterns(slot, trackPatterns);
+                    }
+                    compact = true;
+                    break;
+                case RESYNC:
+                    _shadow = (ProjectData)_attachments.poll();
+                    compact = true;
+                    break;
+                case COMPACT:
+                    compact = true;
+                    break;
+                case READ_SHADOW:
+                    @SuppressWarnings("unchecked")
+                    Consumer<ProjectData> reader = (Consumer<ProjectData>)_attachments.poll();
+                    try
+                    {
+                        reader.accept(_shadow);
+                    }
+                    catch (RuntimeException exc)
+                    {
+                        exc.printStackTrace();
+                    }
+                    break;
+                default:
+                    apply(_shadow, type, trackIdx, step, slot, value, _defaultGate);
+                    if(!_buffer.hasRemaining())
+                    {
+                        flush();
+                    }
+                    _buffer.put((byte)type).put((byte)trackIdx).putShort((short)step).putInt(slot).putInt(value);
+                    _recordsSinceCompaction++;
+                    _records++;
+                    break;
+            }
+        }
+        flush();
+        if(compact || _recordsSinceCompaction >= COMPACT_AFTER_RECORDS)
+        {
+            compact();
+        }
+    }
+
+    private void flush()
+    {
+        if(_buffer.position() == 0)
+        {
+            return;
+        }
+        _buffer.flip();
+        try
+        {
+            while(_buffer.hasRemaining())
+            {
+                _channel.write(_buffer);
+            }
+            _channel.force(false);
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+        _buffer.clear();
+    }
+
+    // the snapshot holds everything journaled so far, a crash before the truncate only replays records it already has
+    private void compact()
+    {
+        try
+        {
+            long startNanos = System.nanoTime();
+            ProjectFile.save(_projectPath, _shadow);
+            _channel.truncate(0);
+            _recordsSinceCompaction = 0;
+            System.out.println("compacted journal into " + _projectPath + " in " + (System.nanoTime() - startNanos) / 1000 + " micros");
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    public void close()
+    {
+        _running = false;
+        LockSupport.unpark(_writerThread);
+        try
+        {
+            _writerThread.join(2000);
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // before the clock starts, a torn record at the end is what a crash mid-write leaves and is dropped
+    public static int replay(Path journalPath, ProjectData project, int defaultGate) throws IOException
+    {
+        if(!Files.exists(journalPath))
+        {
+            return 0;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        int records = 0;
+        while(in.remaining() >= RECORD_SIZE)
+        {
+            int type = in.get() & 0xFF;
+            int trackIdx = in.get() & 0xFF;
+            int step = in.getShort() & 0xFFFF;
+            int slot = in.getInt();
+            int value = in.getInt();
+            apply(project, type, trackIdx, step, slot, value, defaultGate);
+            records++;
+        }
+        return records;
+    }
+
+    private static void apply(ProjectData project, int type, int trackIdx, int step, int slot, int value, int defaultGate)
+    {
+        if(trackIdx >= project.getTracks() || slot < 0 || slot >= project.getSlots() || step >= project.getSteps())
+        {
+            return;
+        }
+        TrackSettings settings = project.getTrackSettings(trackIdx);
+        switch (type)
+        {
+            case STEP_ON:
+            case ADD_NOTE:
+                writablePattern(project, slot, trackIdx, defaultGate).addNote(step, value >>> 8 & 0x7F, value & 0x7F);
+                break;
+            case STEP_OFF:
+                writablePattern(project, slot, trackIdx, defaultGate).clear(step);
+                break;
+            case SET_GATE:
+                writablePattern(project, slot, trackIdx, defaultGate).setGate(step, value);
+                break;
+            case REWRITE_NOTE:
+                PatternStore pattern = writablePattern(project, slot, trackIdx, defaultGate);
+                for(int stepIdx = pattern.nextActive(0); stepIdx != -1; stepIdx = pattern.nextActive(stepIdx + 1))
+                {
+                    pattern.setNote(stepIdx, value & 0x7F, pattern.getVelocity(stepIdx, 0));
+                }
+                break;
+            case SELECT_PATTERN:
+                project.setActivePattern(slot);
+                break;
+            default:
+                if(settings != null)
+                {
+                    applySetting(settings, type, value, project.getSteps());
+                }
+                break;
+        }
+    }
+
+    // a captured project shares its stores with the live model, they are copied before the first write
+    private static PatternStore writablePattern(ProjectData project, int slot, int trackIdx, int defaultGate)
+    {
+        PatternStore[] trackPatterns = project.allocatePatterns(slot, defaultGate);
+        if(trackPatterns[trackIdx].isShared())
+        {
+            trackPatterns[trackIdx] = trackPatterns[trackIdx].copy();
+        }
+        return trackPatterns[trackIdx];
+    }
+
+    private static void applySetting(TrackSettings settings, int type, int value, int steps)
+    {
+        switch (type)
+        {
+            case SET_MAX_STEPS:
+                settings.setMaxSteps(Math.max(1, Math.min(steps, value)));
+                break;
+            case SET_MUTE:
+                settings.setMuted(value != 0);
+                break;
+            case SET_NOTE:
+                settings.setNote(value & 0x7F);
+                break;
+            case SET_CHANNEL:
+                settings.setChannel(value & 0x0F);
+                break;
+            case SET_ARPEGGIATOR:
+                settings.setArpeggiatorOn(value != 0);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return _journalPath + ": " + _records + " records written, " + _ring.getOverflows() + " dropped, " + _droppedAttachments + " attachments dropped, high watermark " + _ring.getHighWatermark();
+    }
+}
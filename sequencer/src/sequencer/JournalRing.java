@@ -0,0 +1,124 @@
+package sequencer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// single producer, single consumer ring of journal records: a header with type, track and step, a pattern slot and a value
+public class JournalRing
+{
+    private static final int INTS_PER_RECORD = 3;
+
+    private int[] _records;
+    private int _mask;
+    private int _backPressureLevel;
+
+    private AtomicLong _head;
+    private AtomicLong _tail;
+    private long _cachedHead;
+
+    private volatile long _overflows;
+    private volatile int _highWatermark;
+
+    private int _polledHeader;
+    private int _polledSlot;
+    private int _polledValue;
+
+    public JournalRing(int capacityPowerOfTwo)
+    {
+        _records = new int[capacityPowerOfTwo * INTS_PER_RECORD];
+        _mask = capacityPowerOfTwo - 1;
+        _backPressureLevel = capacityPowerOfTwo - capacityPowerOfTwo / 4;
+        _head = new AtomicLong(0);
+        _tail = new AtomicLong(0);
+        _cachedHead = 0;
+    }
+
+    // producer side: true means the next offer cannot fail, the consumer only ever makes room
+    public boolean hasRoom()
+    {
+        long tail = _tail.get();
+        if(tail - _cachedHead > _mask)
+        {
+            _cachedHead = _head.get();
+        }
+        return tail - _cachedHead <= _mask;
+    }
+
+    // producer side, only ever called by one thread
+    public boolean offer(int header, int slot, int value)
+    {
+        if(!hasRoom())
+        {
+            _overflows++;
+            return false;
+        }
+        long tail = _tail.get();
+        int base = (int)(tail & _mask) * INTS_PER_RECORD;
+        _records[base] = header;
+        _records[base + 1] = slot;
+        _records[base + 2] = value;
+        // a full volatile store for the same reason as in MidiEventRing: the writer thread parks on a flag read after it
+        _tail.set(tail + 1);
+        int fill = (int)(tail + 1 - _head.get());
+        if(fill > _highWatermark)
+        {
+            _highWatermark = fill;
+        }
+        return true;
+    }
+
+    // consumer side, only ever called by one thread
+    public boolean poll()
+    {
+        long head = _head.get();
+        if(head == _tail.get())
+        {
+            return false;
+        }
+        int base = (int)(head & _mask) * INTS_PER_RECORD;
+        _polledHeader = _records[base];
+        _polledSlot = _records[base + 1];
+        _polledValue = _records[base + 2];
+        _head.lazySet(head + 1);
+        return true;
+    }
+
+    public int getPolledHeader()
+    {
+        return _polledHeader;
+    }
+
+    public int getPolledSlot()
+    {
+        return _polledSlot;
+    }
+
+    public int getPolledValue()
+    {
+        return _polledValue;
+    }
+
+    public boolean isEmpty()
+    {
+        return _head.get() == _tail.get();
+    }
+
+    public int size()
+    {
+        return (int)(_tail.get() - _head.get());
+    }
+
+    public boolean isBackPressured()
+    {
+        return size() >= _backPressureLevel;
+    }
+
+    public long getOverflows()
+    {
+        return _overflows;
+    }
+
+    public int getHighWatermark()
+    {
+        return _highWatermark;
+    }
+}
@@ -0,0 +1,134 @@
+package sequencer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MidiEventRing
+{
+    private int[] _messages;
+    private long[] _timeStamps;
+    private int _mask;
+    private int _backPressureLevel;
+
+    private AtomicLong _head;
+    private AtomicLong _tail;
+    private long _cachedHead;
+
+    private volatile long _overflows;
+    private volatile int _highWatermark;
+
+    private int _polledMessage;
+    private long _polledTimeStamp;
+
+    public MidiEventRing(int capacityPowerOfTwo)
+    {
+        _messages = new int[capacityPowerOfTwo];
+        _timeStamps = new long[capacityPowerOfTwo];
+        _mask = capacityPowerOfTwo - 1;
+        _backPressureLevel = capacityPowerOfTwo - capacityPowerOfTwo / 4;
+        _head = new AtomicLong(0);
+        _tail = new AtomicLong(0);
+        _cachedHead = 0;
+    }
+
+    public static int encode(int status, int data1, int data2)
+    {
+        return (status & 0xFF) << 16 | (data1 & 0xFF) << 8 | (data2 & 0xFF);
+    }
+
+    public static int status(int message)
+    {
+        return message >>> 16 & 0xFF;
+    }
+
+    public static int data1(int message)
+    {
+        return message >>> 8 & 0xFF;
+    }
+
+    public static int data2(int message)
+    {
+        return message & 0xFF;
+    }
+
+    // producer side, only ever called by one thread
+    public boolean offer(int message, long timeStamp)
+    {
+        long tail = _tail.get();
+        if(tail - _cachedHead > _mask)
+        {
+            _cachedHead = _head.get();
+            if(tail - _cachedHead > _mask)
+            {
+                _overflows++;
+                return false;
+            }
+        }
+        int slot = (int)(tail & _mask);
+        _messages[slot] = message;
+        _timeStamps[slot] = timeStamp;
+        // a full volatile store, not lazySet: a consumer that parks after seeing an empty ring is only woken
+        // if its waiting flag is read after this store, and only a full fence orders a store before a later load
+        _tail.set(tail + 1);
+        int fill = (int)(tail + 1 - _head.get());
+        if(fill > _highWatermark)
+        {
+            _highWatermark = fill;
+        }
+        return true;
+    }
+
+    // consumer side, only ever called by one thread
+    public boolean poll()
+    {
+        long head = _head.get();
+        if(head == _tail.get())
+        {
+            return false;
+        }
+        int slot = (int)(head & _mask);
+        _polledMessage = _messages[slot];
+        _polledTimeStamp = _timeStamps[slot];
+        _head.lazySet(head + 1);
+        return true;
+    }
+
+    public int getPolledMessage()
+    {
+        return _polledMessage;
+    }
+
+    public long getPolledTimeStamp()
+    {
+        return _polledTimeStamp;
+    }
+
+    public boolean isEmpty()
+    {
+        return _head.get() == _tail.get();
+    }
+
+    public int size()
+    {
+        return (int)(_tail.get() - _head.get());
+    }
+
+    public boolean isBackPressured()
+    {
+        return size() >= _backPressureLevel;
+    }
+
+    public long getOverflows()
+    {
+        return _overflows;
+    }
+
+    public int getHighWatermark()
+    {
+        return _highWatermark;
+    }
+
+    public int getCapacity()
+    {
+        return _mask + 1;
+    }
+}
@@ -0,0 +1,631 @@
+package sequencer;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import sequencer.ProjectData.TrackSettings;
+
+// standard midi files: export streams format 1 (a tempo track, then one track per sequencer track) with one
+// file tick per sequencer tick; import reads format 0 or 1 and quantizes the notes into the step grid of one pattern
+public class MidiFile
+{
+    private static final int HEADER_MAGIC = 0x4D546864; // "MThd"
+    private static final int TRACK_MAGIC = 0x4D54726B; // "MTrk"
+    private static final int NOTE_OFF = 0x80;
+    private static final int NOTE_ON = 0x90;
+    private static final int DRUM_CHANNEL = 9;
+
+    private int _stepsPerBeat;
+    private int _ticksPerStep;
+    private int _beatsPerBar;
+    private int _importedNotes;
+    private int _droppedNotes;
+
+    public MidiFile(int stepsPerBeat, int ticksPerStep, int beatsPerBar)
+    {
+        _stepsPerBeat = stepsPerBeat;
+        _ticksPerStep = ticksPerStep;
+        _beatsPerBar = beatsPerBar;
+    }
+
+    public int getImportedNotes()
+    {
+        return _importedNotes;
+    }
+
+    public int getDroppedNotes()
+    {
+        return _droppedNotes;
+    }
+
+    // the song plays every arrangement entry with its mutes and tempo, otherwise the active pattern plays once
+    // until its longest track has looped, rounded up to whole bars
+    public void export(Path path, ProjectData project, boolean song) throws IOException
+    {
+        int stepsPerBar = _stepsPerBeat * _beatsPerBar;
+        Arrangement arrangement = song ? project.getArrangement() : new Arrangement(1);
+        if(!song)
+        {
+            int longest = 1;
+            for(int trackIdx = 0; trackIdx < project.getTracks(); trackIdx++)
+            {
+                longest = Math.max(longest, maxSteps(project, trackIdx));
+            }
+            long muteMask = 0;
+            for(int trackIdx = 0; trackIdx < project.getTracks(); trackIdx++)
+            {
+                if(project.getTrackSettings(trackIdx) != null && project.getTrackSettings(trackIdx).isMuted())
+                {
+                    muteMask |= 1L << trackIdx;
+                }
+            }
+            arrangement.add(project.getActivePattern(), (longest + stepsPerBar - 1) / stepsPerBar, muteMask, Arrangement.KEEP_TEMPO);
+        }
+        // one entry per bar, the writers below never have to count repeats
+        int bars = arrangement.getTotalBars();
+        int[] barEntries = new int[bars];
+        int bar = 0;
+        for(int entryIdx = 0; entryIdx < arrangement.size(); entryIdx++)
+        {
+            for(int repeat = 0; repeat < arrangement.getRepeats(entryIdx); repeat++)
+            {
+                barEntries[bar++] = entryIdx;
+            }
+        }
+
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ChunkWriter out = new ChunkWriter(channel);
+            out.putInt(HEADER_MAGIC);
+            out.putInt(6);
+            out.putShort(1);
+            out.putShort(project.getTracks() + 1);
+            out.putShort(_stepsPerBeat * _ticksPerStep);
+
+            out.beginTrack();
+            out.meta(0, 0x58, new byte[]{(byte)_beatsPerBar, 2, (byte)(_stepsPerBeat * _ticksPerStep), 8});
+            out.tempo(0, project.getTempo());
+            for(bar = 0; bar < bars; bar++)
+            {
+                int tempo = arrangement.getTempo(barEntries[bar]);
+                if(tempo != Arrangement.KEEP_TEMPO && (bar == 0 || barEntries[bar - 1] != barEntries[bar]))
+                {
+                    out.tempo((long)bar * stepsPerBar * _ticksPerStep, tempo);
+                }
+            }
+            out.endTrack((long)bars * stepsPerBar * _ticksPerStep);
+
+            for(int trackIdx = 0; trackIdx < project.getTracks(); trackIdx++)
+            {
+                writeTrack(out, project, trackIdx, arrangement, barEntries);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeTrack(ChunkWriter out, ProjectData project, int trackIdx, Arrangement arrangement, int[] barEntries) throws IOException
+    {
+        int stepsPerBar = _stepsPerBeat * _beatsPerBar;
+        TrackSettings settings = project.getTrackSettings(trackIdx);
+        int channel = settings == null ? 0 : settings.getChannel() & 0x0F;
+        int maxSteps = maxSteps(project, trackIdx);
+        String name = "Track " + (trackIdx + 1);
+        if(settings != null && !settings.getDeviceName().isEmpty())
+        {
+            name = name + " " + settings.getDeviceName();
+        }
+        out.beginTrack();
+        out.meta(0, 0x03, name.getBytes(StandardCharsets.UTF_8));
+        // note offs are held back until the stream reaches their time, a retriggered note ends the held one first
+        long[] offTicks = new long[128];
+        Arrays.fill(offTicks, -1);
+        long nextOffTick = Long.MAX_VALUE;
+        int steps = barEntries.length * stepsPerBar;
+        for(int stepCount = 0; stepCount < steps; stepCount++)
+        {
+            long tick = (long)stepCount * _ticksPerStep;
+            if(nextOffTick <= tick)
+            {
+                nextOffTick = writeNoteOffs(out, offTicks, channel, tick);
+            }
+            int entryIdx = barEntries[stepCount / stepsPerBar];
+            PatternStore[] trackPatterns = project.getPatterns(arrangement.getSlot(entryIdx));
+            if(trackPatterns == null || (arrangement.getMuteMask(entryIdx) & (1L << trackIdx)) != 0)
+            {
+                continue;
+            }
+            // like playback, a track's position follows from the steps played since start
+            PatternStore pattern = trackPatterns[trackIdx];
+            int stepIdx = stepCount % maxSteps;
+            if(!pattern.isActive(stepIdx))
+            {
+                continue;
+            }
+            for(int voiceIdx = 0; voiceIdx < pattern.getVoiceCount(stepIdx); voiceIdx++)
+            {
+                int note = pattern.getNote(stepIdx, voiceIdx);
+                if(offTicks[note] >= 0)
+                {
+                    out.event(tick, NOTE_OFF | channel, note, 0);
+                }
+                out.event(tick, NOTE_ON | channel, note, pattern.getVelocity(stepIdx, voiceIdx));
+                offTicks[note] = tick + pattern.getGate(stepIdx);
+                nextOffTick = Math.min(nextOffTick, offTicks[note]);
+            }
+        }
+        writeNoteOffs(out, offTicks, channel, Long.MAX_VALUE);
+        out.endTrack((long)steps * _ticksPerStep);
+    }
+
+    // returns when the next held note is due
+    private long writeNoteOffs(ChunkWriter out, long[] offTicks, int channel, long untilTick) throws IOException
+    {
+        while(true)
+        {
+            int nextNote = -1;
+            long laterTick = Long.MAX_VALUE;
+            for(int note = 0; note < offTicks.length; note++)
+            {
+                if(offTicks[note] < 0)
+                {
+                    continue;
+                }
+                if(offTicks[note] <= untilTick && (nextNote == -1 || offTicks[note] < offTicks[nextNote]))
+                {
+                    nextNote = note;
+                }
+                else if(offTicks[note] > untilTick)
+                {
+                    laterTick = Math.min(laterTick, offTicks[note]);
+                }
+            }
+            if(nextNote == -1)
+            {
+                return laterTick;
+            }
+            out.event(offTicks[nextNote], NOTE_OFF | channel, nextNote, 0);
+            offTicks[nextNote] = -1;
+        }
+    }
+
+    private static int maxSteps(ProjectData project, int trackIdx)
+    {
+        TrackSettings settings = project.getTrackSettings(trackIdx);
+        return settings == null ? project.getSteps() : Math.max(1, Math.min(project.getSteps(), settings.getMaxSteps()));
+    }
+
+    // a channel whose notes all hit track notes (or the gm drum channel) is a drum part and spreads over the tracks
+    // by note, any other channel is a melody and goes to one track, preferably one listening on that channel
+    public PatternStore[] importPatterns(Path path, int[] trackNotes, int[] trackChannels, int steps, int maxVoices) throws IOException
+    {
+        _importedNotes = 0;
+        _droppedNotes = 0;
+        NoteList notes = new NoteList();
+        int division;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            division = readNotes(in, notes);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException exc)
+        {
+            throw new IOException("midi file " + path + " is truncated or corrupt", exc);
+        }
+
+        int tracks = trackNotes.length;
+        int[] channelTargets = new int[16];
+        boolean[] taken = new boolean[tracks];
+        for(int midiChannel = 0; midiChannel < 16; midiChannel++)
+        {
+            channelTargets[midiChannel] = isDrumPart(notes, midiChannel, trackNotes) ? -1 : -2;
+        }
+        for(int noteIdx = 0; noteIdx < notes.size(); noteIdx++)
+        {
+            int trackIdx = drumTrack(notes.getChannel(noteIdx), notes.getNote(noteIdx), trackNotes, trackChannels);
+            if(channelTargets[notes.getChannel(noteIdx)] == -1 && trackIdx >= 0)
+            {
+                taken[trackIdx] = true;
+            }
+        }
+        for(int midiChannel = 0; midiChannel < 16; midiChannel++)
+        {
+            if(channelTargets[midiChannel] == -2 && notes.usesChannel(midiChannel))
+            {
+                channelTargets[midiChannel] = melodyTrack(midiChannel, trackChannels, taken);
+                if(channelTargets[midiChannel] >= 0)
+                {
+                    taken[channelTargets[midiChannel]] = true;
+                }
+            }
+        }
+
+        PatternStore[] trackPatterns = new PatternStore[tracks];
+        for(int trackIdx = 0; trackIdx < tracks; trackIdx++)
+        {
+            trackPatterns[trackIdx] = new PatternStore(steps, maxVoices, _ticksPerStep);
+        }
+        double fileTicksPerStep = (double)division / _stepsPerBeat;
+        for(int noteIdx = 0; noteIdx < notes.size(); noteIdx++)
+        {
+            int midiChannel = notes.getChannel(noteIdx);
+            int trackIdx = channelTargets[midiChannel] == -1 ? drumTrack(midiChannel, notes.getNote(noteIdx), trackNotes, trackChannels) : channelTargets[midiChannel];
+            int stepIdx = (int)Math.round(notes.getTick(noteIdx) / fileTicksPerStep);
+            if(trackIdx < 0 || stepIdx >= steps)
+            {
+                _droppedNotes++;
+                continue;
+            }
+            PatternStore pattern = trackPatterns[trackIdx];
+            boolean wasActive = pattern.isActive(stepIdx);
+            if(!pattern.addNote(stepIdx, notes.getNote(noteIdx), notes.getVelocity(noteIdx)))
+            {
+                _droppedNotes++;
+                continue;
+            }
+            // voices share the gate of their step, the longest one wins
+            int gateTicks = Math.max(1, (int)Math.round(notes.getDuration(noteIdx) * _ticksPerStep / fileTicksPerStep));
+            pattern.setGate(stepIdx, wasActive ? Math.max(gateTicks, pattern.getGate(stepIdx)) : gateTicks);
+            _importedNotes++;
+        }
+        return trackPatterns;
+    }
+
+    private static boolean isDrumPart(NoteList notes, int midiChannel, int[] trackNotes)
+    {
+        if(midiChannel == DRUM_CHANNEL)
+        {
+            return true;
+        }
+        boolean used = false;
+        for(int noteIdx = 0; noteIdx < notes.size(); noteIdx++)
+        {
+            if(notes.getChannel(noteIdx) == midiChannel)
+            {
+                used = true;
+                if(drumTrack(-1, notes.getNote(noteIdx), trackNotes, null) < 0)
+                {
+                    return false;
+                }
+            }
+        }
+        return used;
+    }
+
+    private static int drumTrack(int midiChannel, int note, int[] trackNotes, int[] trackChannels)
+    {
+        int anyChannel = -1;
+        for(int trackIdx = 0; trackIdx < trackNotes.length; trackIdx++)
+        {
+            if(trackNotes[trackIdx] == note)
+            {
+                if(trackChannels != null && trackChannels[trackIdx] == midiChannel)
+                {
+                    return trackIdx;
+                }
+                if(anyChannel == -1)
+                {
+                    anyChannel = trackIdx;
+                }
+            }
+        }
+        return anyChannel;
+    }
+
+    private static int melodyTrack(int midiChannel, int[] trackChannels, boolean[] taken)
+    {
+        for(int trackIdx = 0; trackIdx < trackChannels.length; trackIdx++)
+        {
+            if(!taken[trackIdx] && trackChannels[trackIdx] == midiChannel)
+            {
+                return trackIdx;
+            }
+        }
+        for(int trackIdx = 0; trackIdx < trackChannels.length; trackIdx++)
+        {
+            if(!taken[trackIdx])
+            {
+                return trackIdx;
+            }
+        }
+        return -1;
+    }
+
+    // returns the ticks per quarter note, every finished note of every track chunk ends up in the list
+    private static int readNotes(ByteBuffer in, NoteList notes) throws IOException
+    {
+        if(in.getInt() != HEADER_MAGIC)
+        {
+            throw new IOException("not a standard midi file");
+        }
+        int headerLength = in.getInt();
+        in.getShort();
+        int chunks = in.getShort() & 0xFFFF;
+        int division = in.getShort();
+        if(division <= 0)
+        {
+            throw new IOException("smpte time division is not supported");
+        }
+        in.position(in.position() + headerLength - 6);
+
+        long[] noteOnTicks = new long[16 * 128];
+        int[] noteOnVelocities = new int[16 * 128];
+        for(int chunkIdx = 0; chunkIdx < chunks && in.remaining() >= 8; chunkIdx++)
+        {
+            int chunkType = in.getInt();
+            int chunkLength = in.getInt();
+            int chunkEnd = in.position() + chunkLength;
+            if(chunkType != TRACK_MAGIC)
+            {
+                in.position(chunkEnd);
+                continue;
+            }
+            Arrays.fill(noteOnTicks, -1);
+            long tick = 0;
+            int status = 0;
+            while(in.position() < chunkEnd)
+            {
+                tick += readVariableLength(in);
+                int first = in.get() & 0xFF;
+                if(first == 0xFF)
+                {
+                    int type = in.get() & 0xFF;
+                    int length = readVariableLength(in);
+                    in.position(in.position() + length);
+                    status = 0;
+                    if(type == 0x2F)
+                    {
+                        break;
+                    }
+                    continue;
+                }
+                if(first == 0xF0 || first == 0xF7)
+                {
+                    int length = readVariableLength(in);
+                    in.position(in.position() + length);
+                    status = 0;
+                    continue;
+                }
+                int data1;
+                if((first & 0x80) != 0)
+                {
+                    status = first;
+                    data1 = in.get() & 0x7F;
+                }
+                else if(status != 0)
+                {
+                    // running status, the byte just read is already data
+                    data1 = first;
+                }
+                else
+                {
+                    throw new IOException("data byte without status at " + in.position());
+                }
+                int command = status & 0xF0;
+                int data2 = command == 0xC0 || command == 0xD0 ? 0 : in.get() & 0x7F;
+                int key = (status & 0x0F) * 128 + data1;
+                if(command == NOTE_ON && data2 > 0)
+                {
+                    if(noteOnTicks[key] >= 0)
+                    {
+                        notes.add(noteOnTicks[key], tick - noteOnTicks[key], status & 0x0F, data1, noteOnVelocities[key]);
+                    }
+                    noteOnTicks[key] = tick;
+                    noteOnVelocities[key] = data2;
+                }
+                else if((command == NOTE_ON || command == NOTE_OFF) && noteOnTicks[key] >= 0)
+                {
+                    notes.add(noteOnTicks[key], tick - noteOnTicks[key], status & 0x0F, data1, noteOnVelocities[key]);
+                    noteOnTicks[key] = -1;
+                }
+            }
+            // notes never released last until the end of their track
+            for(int key = 0; key < noteOnTicks.length; key++)
+            {
+                if(noteOnTicks[key] >= 0)
+                {
+                    notes.add(noteOnTicks[key], Math.max(1, tick - noteOnTicks[key]), key / 128, key % 128, noteOnVelocities[key]);
+                }
+            }
+            in.position(chunkEnd);
+        }
+        return division;
+    }
+
+    private static int readVariableLength(ByteBuffer in)
+    {
+        int value = 0;
+        int current;
+        do
+        {
+            current = in.get() & 0xFF;
+            value = (value << 7) | (current & 0x7F);
+        }
+        while((current & 0x80) != 0);
+        return value;
+    }
+
+    private static class NoteList
+    {
+        private long[] _ticks = new long[256];
+        private long[] _durations = new long[256];
+        private int[] _keys = new int[256];
+        private int _size = 0;
+        private int _usedChannels = 0;
+
+        public void add(long tick, long duration, int channel, int note, int velocity)
+        {
+            if(_size == _ticks.length)
+            {
+                _ticks = Arrays.copyOf(_ticks, _size * 2);
+                _durations = Arrays.copyOf(_durations, _size * 2);
+                _keys = Arrays.copyOf(_keys, _size * 2);
+            }
+            _ticks[_size] = tick;
+            _durations[_size] = duration;
+            _keys[_size] = channel << 16 | note << 8 | velocity;
+            _usedChannels |= 1 << channel;
+            _size++;
+        }
+
+        public int size()
+        {
+            return _size;
+        }
+
+        public boolean usesChannel(int channel)
+        {
+            return (_usedChannels & (1 << channel)) != 0;
+        }
+
+        public long getTick(int noteIdx)
+        {
+            return _ticks[noteIdx];
+        }
+
+        public long getDuration(int noteIdx)
+        {
+            return _durations[noteIdx];
+        }
+
+        public int getChannel(int noteIdx)
+        {
+            return _keys[noteIdx] >>> 16;
+        }
+
+        public int getNote(int noteIdx)
+        {
+            return _keys[noteIdx] >>> 8 & 0x7F;
+        }
+
+        public int getVelocity(int noteIdx)
+        {
+            return _keys[noteIdx] & 0x7F;
+        }
+    }
+
+    // events go through a fixed buffer straight to the file, track lengths are patched in once a track is done
+    private static class ChunkWriter
+    {
+        private FileChannel _channel;
+        private ByteBuffer _buffer;
+        private long _flushed;
+        private long _lengthPosition;
+        private long _lastTick;
+
+        public ChunkWriter(FileChannel channel)
+        {
+            _channel = channel;
+            _buffer = ByteBuffer.allocateDirect(65536);
+            _flushed = 0;
+        }
+
+        public void putInt(int value) throws IOException
+        {
+            ensure(4);
+            _buffer.putInt(value);
+        }
+
+        public void putShort(int value) throws IOException
+        {
+            ensure(2);
+            _buffer.putShort((short)value);
+        }
+
+        public void beginTrack() throws IOException
+        {
+            putInt(TRACK_MAGIC);
+            _lengthPosition = _flushed + _buffer.position();
+            putInt(0);
+            _lastTick = 0;
+        }
+
+        public void event(long tick, int status, int data1, int data2) throws IOException
+        {
+            ensure(7);
+            putDelta(tick);
+            _buffer.put((byte)status).put((byte)data1).put((byte)data2);
+        }
+
+        public void meta(long tick, int type, byte[] data) throws IOException
+        {
+            ensure(10 + data.length);
+            putDelta(tick);
+            _buffer.put((byte)0xFF).put((byte)type);
+            putVariableLength(data.length);
+            _buffer.put(data);
+        }
+
+        public void tempo(long tick, int beatsPerMinute) throws IOException
+        {
+            int microsPerQuarter = 60000000 / beatsPerMinute;
+            meta(tick, 0x51, new byte[]{(byte)(microsPerQuarter >>> 16), (byte)(microsPerQuarter >>> 8), (byte)microsPerQuarter});
+        }
+
+        public void endTrack(long tick) throws IOException
+        {
+            meta(Math.max(tick, _lastTick), 0x2F, new byte[0]);
+            long length = _flushed + _buffer.position() - _lengthPosition - 4;
+            if(_lengthPosition >= _flushed)
+            {
+                _buffer.putInt((int)(_lengthPosition - _flushed), (int)length);
+            }
+            else
+            {
+                flush();
+                ByteBuffer patch = ByteBuffer.allocate(4);
+                patch.putInt(0, (int)length);
+                _channel.write(patch, _lengthPosition);
+            }
+        }
+
+        public void flush() throws IOException
+        {
+            _buffer.flip();
+            while(_buffer.hasRemaining())
+            {
+                _flushed += _channel.write(_buffer, _flushed);
+            }
+            _buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException
+        {
+            if(_buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        private void putDelta(long tick)
+        {
+            putVariableLength((int)(tick - _lastTick));
+            _lastTick = tick;
+        }
+
+        private void putVariableLength(int value)
+        {
+            int shift = 21;
+            while(shift > 0 && (value >>> shift) == 0)
+            {
+                shift -= 7;
+            }
+            for(; shift > 0; shift -= 7)
+            {
+                _buffer.put((byte)(0x80 | (value >>> shift & 0x7F)));
+            }
+            _buffer.put((byte)(value & 0x7F));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package sequencer;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+public class MidiOutput implements Runnable
+{
+    private static final int RING_CAPACITY = 1024;
+
+    private int _index;
+    private MidiDevice _device;
+    private Receiver _receiver;
+    private DeviceTimeBase _timeBase;
+    private MidiEventRing _ring;
+    private ShortMessageSlots _messageSlots;
+    private Thread _outputThread;
+    private volatile boolean _running;
+    private volatile boolean _waiting;
+    private volatile long _sendCount;
+    private boolean _wasBackPressured;
+
+    public MidiOutput(int index, MidiDevice device) throws MidiUnavailableException
+    {
+        _index = index;
+        _device = device;
+        if(!_device.isOpen())
+        {
+            _device.open();
+        }
+        _receiver = _device.getReceiver();
+        _timeBase = new DeviceTimeBase(_device);
+        _ring = new MidiEventRing(RING_CAPACITY);
+        _messageSlots = new ShortMessageSlots(256);
+        _sendCount = 0;
+        _running = true;
+        _outputThread = new Thread(this, "midi-out-" + device.getDeviceInfo().getName());
+        _outputThread.setPriority(Thread.MAX_PRIORITY - 1);
+        _outputThread.setDaemon(true);
+        _outputThread.start();
+    }
+
+    // called from the sequencer thread only, never blocks on the device
+    public void send(int command, int channel, int data1, int data2, long tickTimeNanos)
+    {
+        int message = MidiEventRing.encode(command | (channel & 0x0F), data1, data2);
+        _ring.offer(message, _timeBase.toDeviceMicros(tickTimeNanos));
+        if(_waiting)
+        {
+            LockSupport.unpark(_outputThread);
+        }
+        boolean backPressured = _ring.isBackPressured();
+        if(backPressured != _wasBackPressured)
+        {
+            _wasBackPressured = backPressured;
+            if(backPressured)
+            {
+                System.out.println("back pressure on " + this);
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while(_running)
+        {
+            if(!_ring.poll())
+            {
+                // flag first, then look again: the producer stores its tail before it reads the flag, so one of us sees the other
+                _waiting = true;
+                if(_ring.isEmpty() && _running)
+                {
+                    LockSupport.park(this);
+                }
+                _waiting = false;
+                continue;
+            }
+            int message = _ring.getPolledMessage();
+            try
+            {
+                ShortMessage shortMessage = _messageSlots.next(MidiEventRing.status(message) & 0xF0, MidiEventRing.status(message) & 0x0F, MidiEventRing.data1(message), MidiEventRing.data2(message));
+                _receiver.send(shortMessage, _ring.getPolledTimeStamp());
+                _sendCount++;
+            }
+            catch (InvalidMidiDataException exc)
+            {
+                exc.printStackTrace();
+            }
+        }
+    }
+
+    public int getIndex()
+    {
+        return _index;
+    }
+
+    public MidiDevice getDevice()
+    {
+        return _device;
+    }
+
+    public DeviceTimeBase getTimeBase()
+    {
+        return _timeBase;
+    }
+
+    public long getSendCount()
+    {
+        return _sendCount;
+    }
+
+    public long getOverflowCount()
+    {
+        return _ring.getOverflows();
+    }
+
+    public int getPendingCount()
+    {
+        return _ring.size();
+    }
+
+    public boolean isBackPressured()
+    {
+        return _ring.isBackPressured();
+    }
+
+    public void close()
+    {
+        _running = false;
+        LockSupport.unpark(_outputThread);
+        try
+        {
+            _outputThread.join(500);
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+        }
+        _receiver.close();
+        if(_device.isOpen())
+        {
+            _device.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return _device.getDeviceInfo().getName() + ": " + _sendCount + " messages sent, " + _ring.getOverflows() + " dropped, "
+                + _ring.size() + "/" + _ring.getCapacity() + " pending, high watermark " + _ring.getHighWatermark();
+    }
+}
@@ -0,0 +1,46 @@
+package sequencer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+
+public class MidiOutputRegistry
+{
+    private List<MidiOutput> _outputs;
+
+    public MidiOutputRegistry()
+    {
+        _outputs = new ArrayList<>();
+    }
+
+    public synchronized MidiOutput open(MidiDevice device) throws MidiUnavailableException
+    {
+        for (MidiOutput curOutput : _outputs)
+        {
+            if(curOutput.getDevice() == device)
+            {
+                return curOutput;
+            }
+        }
+        MidiOutput newOutput = new MidiOutput(_outputs.size(), device);
+        _outputs.add(newOutput);
+        return newOutput;
+    }
+
+    public synchronized List<MidiOutput> getOutputs()
+    {
+        return new ArrayList<>(_outputs);
+    }
+
+    public synchronized void closeAll()
+    {
+        for (MidiOutput curOutput : _outputs)
+        {
+            System.out.println("closing " + curOutput);
+            curOutput.close();
+        }
+        _outputs.clear();
+    }
+}
@@ -0,0 +1,222 @@
+package sequencer;
+
+public class NoteOffWheel
+{
+    private static final int NO_ENTRY = -1;
+    private static final int MAX_OUTPUTS = 16;
+    private static final int KEYS_PER_OUTPUT = 16 * 128;
+
+    private int[] _buckets;
+    private int _bucketMask;
+
+    private long[] _dueTicks;
+    private MidiOutput[] _outputs;
+    private int[] _channels;
+    private int[] _notes;
+    private int[] _next;
+    private int[] _prev;
+    private int _freeHead;
+    private int _size;
+
+    private int[] _pendingByKey;
+
+    private long _pollTick;
+    private int _pollCursor;
+
+    public NoteOffWheel(int wheelSizePowerOfTwo, int capacity)
+    {
+        _buckets = new int[wheelSizePowerOfTwo];
+        _bucketMask = wheelSizePowerOfTwo - 1;
+        for(int bucketIdx = 0; bucketIdx < _buckets.length; bucketIdx++)
+        {
+            _buckets[bucketIdx] = NO_ENTRY;
+        }
+        allocateEntries(capacity);
+        _pendingByKey = new int[MAX_OUTPUTS * KEYS_PER_OUTPUT];
+        for(int keyIdx = 0; keyIdx < _pendingByKey.length; keyIdx++)
+        {
+            _pendingByKey[keyIdx] = NO_ENTRY;
+        }
+        _pollTick = -1;
+        _pollCursor = NO_ENTRY;
+    }
+
+    public void schedule(long dueTick, MidiOutput output, int channel, int note)
+    {
+        if(dueTick <= _pollTick)
+        {
+            // the bucket of that tick was already visited, the note would hang for a whole wheel round
+            dueTick = _pollTick + 1;
+        }
+        if(_freeHead == NO_ENTRY)
+        {
+            allocateEntries(_dueTicks.length * 2);
+        }
+        int entry = _freeHead;
+        _freeHead = _next[entry];
+
+        _dueTicks[entry] = dueTick;
+        _outputs[entry] = output;
+        _channels[entry] = channel;
+        _notes[entry] = note;
+
+        int bucket = (int)(dueTick & _bucketMask);
+        _prev[entry] = NO_ENTRY;
+        _next[entry] = _buckets[bucket];
+        if(_buckets[bucket] != NO_ENTRY)
+        {
+            _prev[_buckets[bucket]] = entry;
+        }
+        _buckets[bucket] = entry;
+        int key = keyOf(output, channel, note);
+        if(key != NO_ENTRY)
+        {
+            _pendingByKey[key] = entry;
+        }
+        _size++;
+    }
+
+    // returns the pending note-off entry for this note, or -1 if the note is not held
+    public int findPending(MidiOutput output, int channel, int note)
+    {
+        int key = keyOf(output, channel, note);
+        if(key == NO_ENTRY)
+        {
+            return NO_ENTRY;
+        }
+        return _pendingByKey[key];
+    }
+
+    // entries returned by the poll methods stay readable until the next schedule call
+    public int pollDue(long tick)
+    {
+        if(tick != _pollTick)
+        {
+            _pollTick = tick;
+            _pollCursor = _buckets[(int)(tick & _bucketMask)];
+        }
+        while(_pollCursor != NO_ENTRY)
+        {
+            int entry = _pollCursor;
+            _pollCursor = _next[entry];
+            if(_dueTicks[entry] <= tick)
+            {
+                remove(entry);
+                return entry;
+            }
+            // entry is one or more wheel rounds away, leave it in its bucket
+        }
+        return NO_ENTRY;
+    }
+
+    public int pollAny()
+    {
+        for(int bucketIdx = 0; bucketIdx < _buckets.length; bucketIdx++)
+        {
+            int entry = _buckets[bucketIdx];
+            if(entry != NO_ENTRY)
+            {
+                remove(entry);
+                return entry;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    public void remove(int entry)
+    {
+        if(_pollCursor == entry)
+        {
+            _pollCursor = _next[entry];
+        }
+        int bucket = (int)(_dueTicks[entry] & _bucketMask);
+        if(_prev[entry] != NO_ENTRY)
+        {
+            _next[_prev[entry]] = _next[entry];
+        }
+        else
+        {
+            _buckets[bucket] = _next[entry];
+        }
+        if(_next[entry] != NO_ENTRY)
+        {
+            _prev[_next[entry]] = _prev[entry];
+        }
+        int key = keyOf(_outputs[entry], _channels[entry], _notes[entry]);
+        if(key != NO_ENTRY && _pendingByKey[key] == entry)
+        {
+            _pendingByKey[key] = NO_ENTRY;
+        }
+        _next[entry] = _freeHead;
+        _prev[entry] = NO_ENTRY;
+        _freeHead = entry;
+        _size--;
+    }
+
+    public boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    public int size()
+    {
+        return _size;
+    }
+
+    public MidiOutput getOutput(int entry)
+    {
+        return _outputs[entry];
+    }
+
+    public int getChannel(int entry)
+    {
+        return _channels[entry];
+    }
+
+    public int getNote(int entry)
+    {
+        return _notes[entry];
+    }
+
+    private int keyOf(MidiOutput output, int channel, int note)
+    {
+        if(output.getIndex() >= MAX_OUTPUTS)
+        {
+            return NO_ENTRY;
+        }
+        return output.getIndex() * KEYS_PER_OUTPUT + channel * 128 + note;
+    }
+
+    private void allocateEntries(int capacity)
+    {
+        // grows only if more notes are held than ever before, not in steady state
+        int oldCapacity = _dueTicks == null ? 0 : _dueTicks.length;
+        long[] dueTicks = new long[capacity];
+        MidiOutput[] outputs = new MidiOutput[capacity];
+        int[] channels = new int[capacity];
+        int[] notes = new int[capacity];
+        int[] next = new int[capacity];
+        int[] prev = new int[capacity];
+        if(oldCapacity > 0)
+        {
+            System.arraycopy(_dueTicks, 0, dueTicks, 0, oldCapacity);
+            System.arraycopy(_outputs, 0, outputs, 0, oldCapacity);
+            System.arraycopy(_channels, 0, channels, 0, oldCapacity);
+            System.arraycopy(_notes, 0, notes, 0, oldCapacity);
+            System.arraycopy(_next, 0, next, 0, oldCapacity);
+            System.arraycopy(_prev, 0, prev, 0, oldCapacity);
+        }
+        for(int entry = oldCapacity; entry < capacity; entry++)
+        {
+            next[entry] = entry + 1 < capacity ? entry + 1 : NO_ENTRY;
+            prev[entry] = NO_ENTRY;
+        }
+        _freeHead = oldCapacity < capacity ? oldCapacity : NO_ENTRY;
+        _dueTicks = dueTicks;
+        _outputs = outputs;
+        _channels = channels;
+        _notes = notes;
+        _next = next;
+        _prev = prev;
+    }
+}
@@ -0,0 +1,95 @@
+package sequencer;
+
+// all patterns of all tracks, a slot holds one PatternStore per track and is only allocated once it is used
+public class PatternBank
+{
+    private int _banks;
+    private int _patternsPerBank;
+    private int _tracks;
+    private int _steps;
+    private int _maxVoices;
+    private int _defaultGate;
+    private PatternStore[][] _patterns;
+
+    public PatternBank(int banks, int patternsPerBank, int tracks, int steps, int maxVoices, int defaultGate)
+    {
+        _banks = banks;
+        _patternsPerBank = patternsPerBank;
+        _tracks = tracks;
+        _steps = steps;
+        _maxVoices = maxVoices;
+        _defaultGate = defaultGate;
+        _patterns = new PatternStore[banks * patternsPerBank][];
+    }
+
+    public int getBanks()
+    {
+        return _banks;
+    }
+
+    public int getPatternsPerBank()
+    {
+        return _patternsPerBank;
+    }
+
+    public int getSlots()
+    {
+        return _patterns.length;
+    }
+
+    public int getSteps()
+    {
+        return _steps;
+    }
+
+    public int getMaxVoices()
+    {
+        return _maxVoices;
+    }
+
+    public int getTracks()
+    {
+        return _tracks;
+    }
+
+    public int getSlot(int bank, int pattern)
+    {
+        return bank * _patternsPerBank + pattern;
+    }
+
+    public boolean isAllocated(int slot)
+    {
+        return _patterns[slot] != null;
+    }
+
+    public PatternStore getPattern(int slot, int trackIdx)
+    {
+        allocate(slot);
+        return _patterns[slot][trackIdx];
+    }
+
+    public PatternStore[] getPatterns(int slot)
+    {
+        return _patterns[slot];
+    }
+
+    public void setPatterns(int slot, PatternStore[] trackPatterns)
+    {
+        _patterns[slot] = trackPatterns;
+    }
+
+    // a full 16 x 64 bank of 64 tracks would be hundreds of megabytes, most slots are never touched
+    public void allocate(int slot)
+    {
+        if(_patterns[slot] != null)
+        {
+            return;
+        }
+        PatternStore[] trackPatterns = new PatternStore[_tracks];
+        for(int trackIdx = 0; trackIdx < _tracks; trackIdx++)
+        {
+            trackPatterns[trackIdx] = new PatternStore(_steps, _maxVoices, _defaultGate);
+        }
+        _patterns[slot] = trackPatterns;
+    }
+}
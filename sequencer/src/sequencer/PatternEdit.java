@@ -0,0 +1,89 @@
+package sequencer;
+
+public class PatternEdit
+{
+    public enum EditType
+    {
+        TOGGLE_STEP, SET_GATE, CYCLE_GATE, SET_MAX_STEPS, SET_MUTE, SET_NOTE, REWRITE_NOTE, SET_CHANNEL, SET_ARPEGGIATOR, SET_RECORDING, SET_OUTPUT, SELECT_PATTERN, SET_SONG_MODE, SET_ARRANGEMENT, SAVE_PROJECT, EXPORT_MIDI, SET_PATTERNS
+    }
+
+    private EditType _type;
+    private int _trackIdx;
+    private int _step;
+    private int _value;
+    private MidiOutput _output;
+    private Arrangement _arrangement;
+    private PatternStore[] _patterns;
+
+    public PatternEdit(EditType type, int trackIdx, int step, int value)
+    {
+        _type = type;
+        _trackIdx = trackIdx;
+        _step = step;
+        _value = value;
+        _output = null;
+        _arrangement = null;
+        _patterns = null;
+    }
+
+    public PatternEdit(int trackIdx, MidiOutput output)
+    {
+        this(EditType.SET_OUTPUT, trackIdx, 0, 0);
+        _output = output;
+    }
+
+    // the arrangement is handed over, the sender must not change it afterwards
+    public PatternEdit(Arrangement arrangement)
+    {
+        this(EditType.SET_ARRANGEMENT, -1, 0, 0);
+        _arrangement = arrangement;
+    }
+
+    // one pattern per track for the slot, handed over like an arrangement
+    public PatternEdit(int slot, PatternStore[] trackPatterns)
+    {
+        this(EditType.SET_PATTERNS, -1, 0, slot);
+        _patterns = trackPatterns;
+    }
+
+    public EditType getType()
+    {
+        return _type;
+    }
+
+    public int getTrackIndex()
+    {
+        return _trackIdx;
+    }
+
+    public int getStep()
+    {
+        return _step;
+    }
+
+    public int getValue()
+    {
+        return _value;
+    }
+
+    public MidiOutput getOutput()
+    {
+        return _output;
+    }
+
+    public Arrangement getArrangement()
+    {
+        return _arrangement;
+    }
+
+    public PatternStore[] getPatterns()
+    {
+        return _patterns;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _type + " track: " + _trackIdx + ", step: " + _step + ", value: " + _value;
+    }
+}
@@ -0,0 +1,225 @@
+package sequencer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class PatternStore
+{
+    private static final int MAX_GATE_TICKS = Short.MAX_VALUE;
+
+    private int _steps;
+    private int _maxVoices;
+    private long[] _activeBits;
+    private byte[] _voiceCounts;
+    private byte[] _notes;
+    private byte[] _velocities;
+    private short[] _gates;
+    private boolean _shared;
+
+    public PatternStore(int steps, int maxVoices, int defaultGate)
+    {
+        _steps = steps;
+        _maxVoices = maxVoices;
+        _activeBits = new long[(steps + 63) / 64];
+        _voiceCounts = new byte[steps];
+        _notes = new byte[steps * maxVoices];
+        _velocities = new byte[steps * maxVoices];
+        _gates = new short[steps];
+        for(int stepIdx = 0; stepIdx < steps; stepIdx++)
+        {
+            _gates[stepIdx] = (short)defaultGate;
+        }
+    }
+
+    public PatternStore copy()
+    {
+        PatternStore copy = new PatternStore(_steps, _maxVoices, 1);
+        System.arraycopy(_activeBits, 0, copy._activeBits, 0, _activeBits.length);
+        System.arraycopy(_voiceCounts, 0, copy._voiceCounts, 0, _voiceCounts.length);
+        System.arraycopy(_notes, 0, copy._notes, 0, _notes.length);
+        System.arraycopy(_velocities, 0, copy._velocities, 0, _velocities.length);
+        System.arraycopy(_gates, 0, copy._gates, 0, _gates.length);
+        return copy;
+    }
+
+    // sequencer thread: once a store is handed to a reader it is never written again, its owner writes to a copy
+    public PatternStore share()
+    {
+        _shared = true;
+        return this;
+    }
+
+    public boolean isShared()
+    {
+        return _shared;
+    }
+
+    // active bits and gates as they are, then only the voices of active steps
+    public void writeTo(DataOutput out) throws IOException
+    {
+        for(int wordIdx = 0; wordIdx < _activeBits.length; wordIdx++)
+        {
+            out.writeLong(_activeBits[wordIdx]);
+        }
+        for(int stepIdx = 0; stepIdx < _steps; stepIdx++)
+        {
+            out.writeShort(_gates[stepIdx]);
+        }
+        for(int stepIdx = nextActive(0); stepIdx != -1; stepIdx = nextActive(stepIdx + 1))
+        {
+            int base = stepIdx * _maxVoices;
+            out.writeByte(_voiceCounts[stepIdx]);
+            out.write(_notes, base, _voiceCounts[stepIdx]);
+            out.write(_velocities, base, _voiceCounts[stepIdx]);
+        }
+    }
+
+    public void readFrom(ByteBuffer in) throws IOException
+    {
+        for(int wordIdx = 0; wordIdx < _activeBits.length; wordIdx++)
+        {
+            _activeBits[wordIdx] = in.getLong();
+        }
+        if(_steps % 64 != 0 && _activeBits[_activeBits.length - 1] >>> (_steps % 64) != 0)
+        {
+            throw new IOException("active steps beyond step " + _steps);
+        }
+        for(int stepIdx = 0; stepIdx < _steps; stepIdx++)
+        {
+            int gateTicks = in.getShort();
+            if(gateTicks < 1 || gateTicks > MAX_GATE_TICKS)
+            {
+                throw new IOException("step " + (stepIdx + 1) + " has a gate of " + gateTicks + " ticks, it must be 1.." + MAX_GATE_TICKS);
+            }
+            _gates[stepIdx] = (short)gateTicks;
+        }
+        for(int stepIdx = nextActive(0); stepIdx != -1; stepIdx = nextActive(stepIdx + 1))
+        {
+            int base = stepIdx * _maxVoices;
+            int voiceCount = in.get();
+            if(voiceCount < 1 || voiceCount > _maxVoices)
+            {
+                throw new IOException("step " + (stepIdx + 1) + " holds " + voiceCount + " voices, at most " + _maxVoices + " fit");
+            }
+            _voiceCounts[stepIdx] = (byte)voiceCount;
+            in.get(_notes, base, voiceCount);
+            in.get(_velocities, base, voiceCount);
+            for(int voiceIdx = base; voiceIdx < base + voiceCount; voiceIdx++)
+            {
+                if(_notes[voiceIdx] < 0 || _velocities[voiceIdx] < 0)
+                {
+                    throw new IOException("step " + (stepIdx + 1) + " holds a note or velocity above 127");
+                }
+            }
+        }
+    }
+
+    public int getSteps()
+    {
+        return _steps;
+    }
+
+    public int getMaxVoices()
+    {
+        return _maxVoices;
+    }
+
+    public boolean isActive(int stepIdx)
+    {
+        return (_activeBits[stepIdx >>> 6] & (1L << stepIdx)) != 0;
+    }
+
+    // next active step at or after fromStep, -1 if there is none
+    public int nextActive(int fromStep)
+    {
+        if(fromStep >= _steps)
+        {
+            return -1;
+        }
+        int wordIdx = fromStep >>> 6;
+        long word = _activeBits[wordIdx] & (-1L << fromStep);
+        while(true)
+        {
+            if(word != 0)
+            {
+                int stepIdx = wordIdx * 64 + Long.numberOfTrailingZeros(word);
+                return stepIdx < _steps ? stepIdx : -1;
+            }
+            wordIdx++;
+            if(wordIdx >= _activeBits.length)
+            {
+                return -1;
+            }
+            word = _activeBits[wordIdx];
+        }
+    }
+
+    public int getVoiceCount(int stepIdx)
+    {
+        return _voiceCounts[stepIdx];
+    }
+
+    public int getNote(int stepIdx, int voiceIdx)
+    {
+        return _notes[stepIdx * _maxVoices + voiceIdx];
+    }
+
+    public int getVelocity(int stepIdx, int voiceIdx)
+    {
+        return _velocities[stepIdx * _maxVoices + voiceIdx];
+    }
+
+    public int getGate(int stepIdx)
+    {
+        return _gates[stepIdx];
+    }
+
+    public void setGate(int stepIdx, int gateTicks)
+    {
+        _gates[stepIdx] = (short)Math.max(1, Math.min(MAX_GATE_TICKS, gateTicks));
+    }
+
+    // voices of a step are kept sorted by note and free of duplicates so playback is a plain loop
+    public boolean addNote(int stepIdx, int note, int velocity)
+    {
+        int base = stepIdx * _maxVoices;
+        int voiceCount = _voiceCounts[stepIdx];
+        int insertIdx = 0;
+        while(insertIdx < voiceCount && _notes[base + insertIdx] < note)
+        {
+            insertIdx++;
+        }
+        if(insertIdx < voiceCount && _notes[base + insertIdx] == note)
+        {
+            _velocities[base + insertIdx] = (byte)velocity;
+            return true;
+        }
+        if(voiceCount >= _maxVoices)
+        {
+            return false;
+        }
+        for(int voiceIdx = voiceCount; voiceIdx > insertIdx; voiceIdx--)
+        {
+            _notes[base + voiceIdx] = _notes[base + voiceIdx - 1];
+            _velocities[base + voiceIdx] = _velocities[base + voiceIdx - 1];
+        }
+        _notes[base + insertIdx] = (byte)note;
+        _velocities[base + insertIdx] = (byte)velocity;
+        _voiceCounts[stepIdx] = (byte)(voiceCount + 1);
+        _activeBits[stepIdx >>> 6] |= 1L << stepIdx;
+        return true;
+    }
+
+    public void setNote(int stepIdx, int note, int velocity)
+    {
+        clear(stepIdx);
+        addNote(stepIdx, note, velocity);
+    }
+
+    public void clear(int stepIdx)
+    {
+        _voiceCounts[stepIdx] = 0;
+        _activeBits[stepIdx >>> 6] &= ~(1L << stepIdx);
+    }
+}
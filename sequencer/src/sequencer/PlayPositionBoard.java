@@ -0,0 +1,67 @@
+package sequencer;
+
+import java.util.concurrent.locks.StampedLock;
+
+import sequencer.SequencerMain.PlayStatusType;
+
+public class PlayPositionBoard
+{
+    private StampedLock _lock;
+    private long _version;
+    private PlayStatusType _status;
+    private int _globalStep;
+    private long _tickTimeNanos;
+    private int[] _trackSteps;
+
+    public PlayPositionBoard(int numTracks)
+    {
+        _lock = new StampedLock();
+        _version = 0;
+        _status = PlayStatusType.STOPPED;
+        _trackSteps = new int[numTracks];
+    }
+
+    // only ever called by the clock thread, it never waits on readers
+    public void publish(PlayStatusType status, int globalStep, long tickTimeNanos, int[] trackSteps)
+    {
+        long stamp = _lock.writeLock();
+        try
+        {
+            _version++;
+            _status = status;
+            _globalStep = globalStep;
+            _tickTimeNanos = tickTimeNanos;
+            System.arraycopy(trackSteps, 0, _trackSteps, 0, _trackSteps.length);
+        }
+        finally
+        {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean readInto(PlaySnapshot snapshot)
+    {
+        long stamp = _lock.tryOptimisticRead();
+        if(stamp != 0 && _version == snapshot.getVersion())
+        {
+            if(_lock.validate(stamp))
+            {
+                return false;
+            }
+        }
+        // seqlock style read: copy, then check nobody published meanwhile, readers never make the clock wait
+        while(true)
+        {
+            stamp = _lock.tryOptimisticRead();
+            if(stamp == 0)
+            {
+                continue;
+            }
+            snapshot.set(_version, _status, _globalStep, _tickTimeNanos, _trackSteps);
+            if(_lock.validate(stamp))
+            {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package sequencer;
+
+import sequencer.SequencerMain.PlayStatusType;
+
+public class PlaySnapshot
+{
+    private long _version;
+    private PlayStatusType _status;
+    private int _globalStep;
+    private long _tickTimeNanos;
+    private int[] _trackSteps;
+
+    public PlaySnapshot(int numTracks)
+    {
+        _version = -1;
+        _status = PlayStatusType.STOPPED;
+        _trackSteps = new int[numTracks];
+    }
+
+    public long getVersion()
+    {
+        return _version;
+    }
+
+    public PlayStatusType getStatus()
+    {
+        return _status;
+    }
+
+    public int getGlobalStep()
+    {
+        return _globalStep;
+    }
+
+    public long getTickTimeNanos()
+    {
+        return _tickTimeNanos;
+    }
+
+    public int getTrackStep(int trackIdx)
+    {
+        return _trackSteps[trackIdx];
+    }
+
+    void set(long version, PlayStatusType status, int globalStep, long tickTimeNanos, int[] trackSteps)
+    {
+        _version = version;
+        _status = status;
+        _globalStep = globalStep;
+        _tickTimeNanos = tickTimeNanos;
+        System.arraycopy(trackSteps, 0, _trackSteps, 0, _trackSteps.length);
+    }
+}
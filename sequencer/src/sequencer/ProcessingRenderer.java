@@ -0,0 +1,138 @@
+package sequencer;
+
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+public class ProcessingRenderer implements Renderer
+{
+    private PApplet _app;
+    private PGraphics _graphics;
+    private boolean _isLayer;
+
+    public ProcessingRenderer(PApplet app)
+    {
+        this(app, app.getGraphics(), false);
+    }
+
+    private ProcessingRenderer(PApplet app, PGraphics graphics, boolean isLayer)
+    {
+        _app = app;
+        _graphics = graphics;
+        _isLayer = isLayer;
+    }
+
+    public PGraphics getGraphics()
+    {
+        return _graphics;
+    }
+
+    @Override
+    public void beginDraw()
+    {
+        // the sketch's own graphics are opened and closed by Processing around draw()
+        if(_isLayer)
+        {
+            _graphics.beginDraw();
+        }
+    }
+
+    @Override
+    public void endDraw()
+    {
+        if(_isLayer)
+        {
+            _graphics.endDraw();
+        }
+    }
+
+    @Override
+    public void background(int gray)
+    {
+        _graphics.background(gray);
+    }
+
+    @Override
+    public void fill(int gray)
+    {
+        _graphics.fill(gray);
+    }
+
+    @Override
+    public void fill(int red, int green, int blue)
+    {
+        _graphics.fill(red, green, blue);
+    }
+
+    @Override
+    public void stroke(int gray)
+    {
+        _graphics.stroke(gray);
+    }
+
+    @Override
+    public void noStroke()
+    {
+        _graphics.noStroke();
+    }
+
+    @Override
+    public void translate(float x, float y)
+    {
+        _graphics.translate(x, y);
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height)
+    {
+        _graphics.rect(x, y, width, height);
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height, float radius)
+    {
+        _graphics.rect(x, y, width, height, radius);
+    }
+
+    @Override
+    public void line(float x1, float y1, float x2, float y2)
+    {
+        _graphics.line(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void ellipse(float x, float y, float width, float height)
+    {
+        _graphics.ellipse(x, y, width, height);
+    }
+
+    @Override
+    public void textFont(PFont font)
+    {
+        _graphics.textFont(font);
+    }
+
+    @Override
+    public void textAlign(int alignX)
+    {
+        _graphics.textAlign(alignX);
+    }
+
+    @Override
+    public void text(String text, float x, float y)
+    {
+        _graphics.text(text, x, y);
+    }
+
+    @Override
+    public Renderer createLayer(int width, int height)
+    {
+        return new ProcessingRenderer(_app, _app.createGraphics(width, height), true);
+    }
+
+    @Override
+    public void drawLayer(Renderer layer, float x, float y)
+    {
+        _graphics.image(((ProcessingRenderer)layer).getGraphics(), x, y);
+    }
+}
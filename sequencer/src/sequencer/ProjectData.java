@@ -0,0 +1,205 @@
+package sequencer;
+
+// everything a project file holds, detached from the live model so it can be written or read on any thread
+public class ProjectData
+{
+    private int _tracks;
+    private int _steps;
+    private int _maxVoices;
+    private int _banks;
+    private int _patternsPerBank;
+    private int _tempo;
+    private int _activePattern;
+    private TrackSettings[] _trackSettings;
+    private PatternStore[][] _patterns;
+    private Arrangement _arrangement;
+
+    public ProjectData(int tracks, int steps, int maxVoices, int banks, int patternsPerBank)
+    {
+        _tracks = tracks;
+        _steps = steps;
+        _maxVoices = maxVoices;
+        _banks = banks;
+        _patternsPerBank = patternsPerBank;
+        _tempo = SequencerConfig.DEFAULT_TEMPO;
+        _activePattern = 0;
+        _trackSettings = new TrackSettings[tracks];
+        _patterns = new PatternStore[banks * patternsPerBank][];
+        _arrangement = new Arrangement();
+    }
+
+    public static class TrackSettings
+    {
+        private int _note;
+        private int _channel;
+        private int _maxSteps;
+        private boolean _muted;
+        private boolean _arpeggiatorOn;
+        private String _deviceName;
+
+        public TrackSettings(int note, int channel, int maxSteps, boolean muted, boolean arpeggiatorOn, String deviceName)
+        {
+            _note = note;
+            _channel = channel;
+            _maxSteps = maxSteps;
+            _muted = muted;
+            _arpeggiatorOn = arpeggiatorOn;
+            _deviceName = deviceName;
+        }
+
+        public int getNote()
+        {
+            return _note;
+        }
+
+        public void setNote(int note)
+        {
+            _note = note;
+        }
+
+        public int getChannel()
+        {
+            return _channel;
+        }
+
+        public void setChannel(int channel)
+        {
+            _channel = channel;
+        }
+
+        public int getMaxSteps()
+        {
+            return _maxSteps;
+        }
+
+        public void setMaxSteps(int maxSteps)
+        {
+            _maxSteps = maxSteps;
+        }
+
+        public boolean isMuted()
+        {
+            return _muted;
+        }
+
+        public void setMuted(boolean muted)
+        {
+            _muted = muted;
+        }
+
+        public boolean isArpeggiatorOn()
+        {
+            return _arpeggiatorOn;
+        }
+
+        public void setArpeggiatorOn(boolean arpeggiatorOn)
+        {
+            _arpeggiatorOn = arpeggiatorOn;
+        }
+
+        public String getDeviceName()
+        {
+            return _deviceName;
+        }
+
+        public void setDeviceName(String deviceName)
+        {
+            _deviceName = deviceName;
+        }
+    }
+
+    public int getTracks()
+    {
+        return _tracks;
+    }
+
+    public int getSteps()
+    {
+        return _steps;
+    }
+
+    public int getMaxVoices()
+    {
+        return _maxVoices;
+    }
+
+    public int getBanks()
+    {
+        return _banks;
+    }
+
+    public int getPatternsPerBank()
+    {
+        return _patternsPerBank;
+    }
+
+    public int getSlots()
+    {
+        return _patterns.length;
+    }
+
+    public int getTempo()
+    {
+        return _tempo;
+    }
+
+    public void setTempo(int tempo)
+    {
+        _tempo = tempo;
+    }
+
+    public int getActivePattern()
+    {
+        return _activePattern;
+    }
+
+    public void setActivePattern(int activePattern)
+    {
+        _activePattern = activePattern;
+    }
+
+    public TrackSettings getTrackSettings(int trackIdx)
+    {
+        return _trackSettings[trackIdx];
+    }
+
+    public void setTrackSettings(int trackIdx, TrackSettings trackSettings)
+    {
+        _trackSettings[trackIdx] = trackSettings;
+    }
+
+    // null for slots that were never used
+    public PatternStore[] getPatterns(int slot)
+    {
+        return _patterns[slot];
+    }
+
+    public void setPatterns(int slot, PatternStore[] trackPatterns)
+    {
+        _patterns[slot] = trackPatterns;
+    }
+
+    public PatternStore[] allocatePatterns(int slot, int defaultGate)
+    {
+        if(_patterns[slot] == null)
+        {
+            PatternStore[] trackPatterns = new PatternStore[_tracks];
+            for(int trackIdx = 0; trackIdx < _tracks; trackIdx++)
+            {
+                trackPatterns[trackIdx] = new PatternStore(_steps, _maxVoices, defaultGate);
+            }
+            _patterns[slot] = trackPatterns;
+        }
+        return _patterns[slot];
+    }
+
+    public Arrangement getArrangement()
+    {
+        return _arrangement;
+    }
+
+    public void setArrangement(Arrangement arrangement)
+    {
+        _arrangement = arrangement;
+    }
+}
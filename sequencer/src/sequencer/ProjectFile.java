@@ -0,0 +1,218 @@
+package sequencer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import sequencer.ProjectData.TrackSettings;
+
+// layout: header, track settings, used pattern slots, arrangement; all big endian
+public class ProjectFile
+{
+    private static final int MAGIC = 0x53455150; // "SEQP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_MUTED = 1;
+    private static final int FLAG_ARPEGGIATOR = 2;
+    private static final int ARRANGEMENT_ENTRY_SIZE = 16;
+
+    public static synchronized void save(Path path, ProjectData project) throws IOException
+    {
+        // write next to the target and move it over, a crash or power cut leaves either the old or the new file
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile()))
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+            writeProject(out, project);
+            out.flush();
+            // the SD card may reorder writes, make sure the data is down before the rename
+            fileOut.getChannel().force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static ProjectData load(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readProject(in);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException exc)
+        {
+            throw new IOException("project file " + path + " is truncated or corrupt", exc);
+        }
+    }
+
+    private static void writeProject(DataOutputStream out, ProjectData project) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeShort(project.getTracks());
+        out.writeShort(project.getSteps());
+        out.writeShort(project.getMaxVoices());
+        out.writeShort(project.getBanks());
+        out.writeShort(project.getPatternsPerBank());
+        out.writeShort(project.getTempo());
+        out.writeInt(project.getActivePattern());
+
+        for(int trackIdx = 0; trackIdx < project.getTracks(); trackIdx++)
+        {
+            TrackSettings settings = project.getTrackSettings(trackIdx);
+            out.writeByte(settings.getNote());
+            out.writeByte(settings.getChannel());
+            out.writeShort(settings.getMaxSteps());
+            out.writeByte((settings.isMuted() ? FLAG_MUTED : 0) | (settings.isArpeggiatorOn() ? FLAG_ARPEGGIATOR : 0));
+            writeString(out, settings.getDeviceName());
+        }
+
+        int usedSlots = 0;
+        for(int slot = 0; slot < project.getSlots(); slot++)
+        {
+            if(project.getPatterns(slot) != null)
+            {
+                usedSlots++;
+            }
+        }
+        out.writeInt(usedSlots);
+        for(int slot = 0; slot < project.getSlots(); slot++)
+        {
+            PatternStore[] trackPatterns = project.getPatterns(slot);
+            if(trackPatterns == null)
+            {
+                continue;
+            }
+            out.writeInt(slot);
+            for (PatternStore curPattern : trackPatterns)
+            {
+                curPattern.writeTo(out);
+            }
+        }
+
+        Arrangement arrangement = project.getArrangement();
+        out.writeInt(arrangement.size());
+        for(int entryIdx = 0; entryIdx < arrangement.size(); entryIdx++)
+        {
+            out.writeInt(arrangement.getSlot(entryIdx));
+            out.writeShort(arrangement.getRepeats(entryIdx));
+            out.writeLong(arrangement.getMuteMask(entryIdx));
+            out.writeShort(arrangement.getTempo(entryIdx));
+        }
+    }
+
+    private static ProjectData readProject(ByteBuffer in) throws IOException
+    {
+        if(in.getInt() != MAGIC)
+        {
+            throw new IOException("not a sequencer project");
+        }
+        int version = in.getShort();
+        if(version > FORMAT_VERSION)
+        {
+            throw new IOException("project format " + version + " is newer than this sequencer (" + FORMAT_VERSION + ")");
+        }
+        int tracks = in.getShort();
+        int steps = in.getShort();
+        int maxVoices = in.getShort();
+        int banks = in.getShort();
+        int patternsPerBank = in.getShort();
+        if(tracks < 1 || tracks > SequencerConfig.MAX_TRACKS || steps < 1 || steps > SequencerConfig.MAX_STEPS || maxVoices < 1
+                || maxVoices > SequencerConfig.MAX_VOICES || banks < 1 || banks > SequencerConfig.MAX_BANKS || patternsPerBank < 1 || patternsPerBank > SequencerConfig.MAX_PATTERNS_PER_BANK)
+        {
+            throw new IOException("project size out of range: " + tracks + " tracks, " + steps + " steps, " + maxVoices + " voices, "
+                    + banks + " x " + patternsPerBank + " patterns");
+        }
+        ProjectData project = new ProjectData(tracks, steps, maxVoices, banks, patternsPerBank);
+        project.setTempo(checkTempo(in.getShort()));
+        int activePattern = in.getInt();
+        if(activePattern < 0 || activePattern >= project.getSlots())
+        {
+            throw new IOException("active pattern " + activePattern + " out of range");
+        }
+        project.setActivePattern(activePattern);
+
+        for(int trackIdx = 0; trackIdx < tracks; trackIdx++)
+        {
+            int note = in.get();
+            int channel = in.get();
+            int maxSteps = in.getShort();
+            int flags = in.get();
+            String deviceName = readString(in);
+            if(note < 0 || channel < 0 || channel > 15 || maxSteps < 1 || maxSteps > steps)
+            {
+                throw new IOException("track " + (trackIdx + 1) + " settings out of range: note " + note + ", channel " + channel + ", " + maxSteps + " steps");
+            }
+            project.setTrackSettings(trackIdx, new TrackSettings(note, channel, maxSteps, (flags & FLAG_MUTED) != 0, (flags & FLAG_ARPEGGIATOR) != 0, deviceName));
+        }
+
+        int usedSlots = in.getInt();
+        for(int slotCnt = 0; slotCnt < usedSlots; slotCnt++)
+        {
+            int slot = in.getInt();
+            if(slot < 0 || slot >= project.getSlots())
+            {
+                throw new IOException("pattern slot " + slot + " out of range");
+            }
+            PatternStore[] trackPatterns = new PatternStore[tracks];
+            for(int trackIdx = 0; trackIdx < tracks; trackIdx++)
+            {
+                trackPatterns[trackIdx] = new PatternStore(steps, maxVoices, 1);
+                trackPatterns[trackIdx].readFrom(in);
+            }
+            project.setPatterns(slot, trackPatterns);
+        }
+
+        int entries = in.getInt();
+        if(entries < 0 || entries > in.remaining() / ARRANGEMENT_ENTRY_SIZE)
+        {
+            throw new IOException("arrangement length " + entries + " does not fit the file");
+        }
+        Arrangement arrangement = new Arrangement(Math.max(1, entries));
+        for(int entryIdx = 0; entryIdx < entries; entryIdx++)
+        {
+            int slot = in.getInt();
+            int repeats = in.getShort() & 0xFFFF;
+            long muteMask = in.getLong();
+            int tempo = in.getShort();
+            if(slot < 0 || slot >= project.getSlots())
+            {
+                throw new IOException("arrangement entry " + (entryIdx + 1) + " plays pattern slot " + slot + " out of range");
+            }
+            arrangement.add(slot, repeats, muteMask, tempo == Arrangement.KEEP_TEMPO ? tempo : checkTempo(tempo));
+        }
+        project.setArrangement(arrangement);
+        return project;
+    }
+
+    private static int checkTempo(int tempo) throws IOException
+    {
+        if(tempo < SequencerConfig.MIN_TEMPO || tempo > SequencerConfig.MAX_TEMPO)
+        {
+            throw new IOException("tempo " + tempo + " out of range " + SequencerConfig.MIN_TEMPO + ".." + SequencerConfig.MAX_TEMPO);
+        }
+        return tempo;
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException
+    {
+        byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,264 @@
+package sequencer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import processing.core.PFont;
+
+// counts every draw call and optionally keeps the command stream, works without a display if there is no delegate
+public class RecordingRenderer implements Renderer
+{
+    public enum DrawCommand
+    {
+        BEGIN_DRAW, END_DRAW, BACKGROUND, FILL, STROKE, NO_STROKE, TRANSLATE, RECT, LINE, ELLIPSE, TEXT_FONT, TEXT_ALIGN, TEXT, CREATE_LAYER, DRAW_LAYER
+    }
+
+    private Renderer _delegate;
+    private RecordingRenderer _root;
+    private long[] _counts;
+    private boolean _capture;
+    private List<String> _commands;
+
+    public RecordingRenderer(Renderer delegate)
+    {
+        this(delegate, null);
+    }
+
+    private RecordingRenderer(Renderer delegate, RecordingRenderer root)
+    {
+        _delegate = delegate;
+        // layers record into the renderer they were created from, so the totals cover everything a frame costs
+        _root = root == null ? this : root;
+        _counts = new long[DrawCommand.values().length];
+        _capture = false;
+        _commands = new ArrayList<>();
+    }
+
+    public Renderer getDelegate()
+    {
+        return _delegate;
+    }
+
+    public void setCapture(boolean capture)
+    {
+        _root._capture = capture;
+    }
+
+    public long getCount(DrawCommand command)
+    {
+        return _root._counts[command.ordinal()];
+    }
+
+    // everything that ends up as pixels, state changes and layer handling not included
+    public long getPrimitiveCount()
+    {
+        return getCount(DrawCommand.BACKGROUND) + getCount(DrawCommand.RECT) + getCount(DrawCommand.LINE)
+                + getCount(DrawCommand.ELLIPSE) + getCount(DrawCommand.TEXT) + getCount(DrawCommand.DRAW_LAYER);
+    }
+
+    public List<String> getCommands()
+    {
+        return _root._commands;
+    }
+
+    public void reset()
+    {
+        for(int commandIdx = 0; commandIdx < _root._counts.length; commandIdx++)
+        {
+            _root._counts[commandIdx] = 0;
+        }
+        _root._commands.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder();
+        for (DrawCommand curCommand : DrawCommand.values())
+        {
+            result.append(curCommand).append(": ").append(getCount(curCommand)).append(" ");
+        }
+        return result.toString();
+    }
+
+    private void record(DrawCommand command, Object... args)
+    {
+        _root._counts[command.ordinal()]++;
+        if(_root._capture)
+        {
+            StringBuilder entry = new StringBuilder(command.toString());
+            for (Object curArg : args)
+            {
+                entry.append(' ').append(curArg);
+            }
+            _root._commands.add(entry.toString());
+        }
+    }
+
+    @Override
+    public void beginDraw()
+    {
+        record(DrawCommand.BEGIN_DRAW);
+        if(_delegate != null)
+        {
+            _delegate.beginDraw();
+        }
+    }
+
+    @Override
+    public void endDraw()
+    {
+        record(DrawCommand.END_DRAW);
+        if(_delegate != null)
+        {
+            _delegate.endDraw();
+        }
+    }
+
+    @Override
+    public void background(int gray)
+    {
+        record(DrawCommand.BACKGROUND, gray);
+        if(_delegate != null)
+        {
+            _delegate.background(gray);
+        }
+    }
+
+    @Override
+    public void fill(int gray)
+    {
+        record(DrawCommand.FILL, gray);
+        if(_delegate != null)
+        {
+            _delegate.fill(gray);
+        }
+    }
+
+    @Override
+    public void fill(int red, int green, int blue)
+    {
+        record(DrawCommand.FILL, red, green, blue);
+        if(_delegate != null)
+        {
+            _delegate.fill(red, green, blue);
+        }
+    }
+
+    @Override
+    public void stroke(int gray)
+    {
+        record(DrawCommand.STROKE, gray);
+        if(_delegate != null)
+        {
+            _delegate.stroke(gray);
+        }
+    }
+
+    @Override
+    public void noStroke()
+    {
+        record(DrawCommand.NO_STROKE);
+        if(_delegate != null)
+        {
+            _delegate.noStroke();
+        }
+    }
+
+    @Override
+    public void translate(float x, float y)
+    {
+        record(DrawCommand.TRANSLATE, x, y);
+        if(_delegate != null)
+        {
+            _delegate.translate(x, y);
+        }
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height)
+    {
+        record(DrawCommand.RECT, x, y, width, height);
+        if(_delegate != null)
+        {
+            _delegate.rect(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height, float radius)
+    {
+        record(DrawCommand.RECT, x, y, width, height, radius);
+        if(_delegate != null)
+        {
+            _delegate.rect(x, y, width, height, radius);
+        }
+    }
+
+    @Override
+    public void line(float x1, float y1, float x2, float y2)
+    {
+        record(DrawCommand.LINE, x1, y1, x2, y2);
+        if(_delegate != null)
+        {
+            _delegate.line(x1, y1, x2, y2);
+        }
+    }
+
+    @Override
+    public void ellipse(float x, float y, float width, float height)
+    {
+        record(DrawCommand.ELLIPSE, x, y, width, height);
+        if(_delegate != null)
+        {
+            _delegate.ellipse(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void textFont(PFont font)
+    {
+        record(DrawCommand.TEXT_FONT, font == null ? null : font.getName());
+        if(_delegate != null)
+        {
+            _delegate.textFont(font);
+        }
+    }
+
+    @Override
+    public void textAlign(int alignX)
+    {
+        record(DrawCommand.TEXT_ALIGN, alignX);
+        if(_delegate != null)
+        {
+            _delegate.textAlign(alignX);
+        }
+    }
+
+    @Override
+    public void text(String text, float x, float y)
+    {
+        record(DrawCommand.TEXT, text, x, y);
+        if(_delegate != null)
+        {
+            _delegate.text(text, x, y);
+        }
+    }
+
+    @Override
+    public Renderer createLayer(int width, int height)
+    {
+        record(DrawCommand.CREATE_LAYER, width, height);
+        return new RecordingRenderer(_delegate == null ? null : _delegate.createLayer(width, height), _root);
+    }
+
+    @Override
+    public void drawLayer(Renderer layer, float x, float y)
+    {
+        record(DrawCommand.DRAW_LAYER, x, y);
+        if(_delegate != null)
+        {
+            _delegate.drawLayer(((RecordingRenderer)layer).getDelegate(), x, y);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sequencer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import processing.core.PApplet;
+
+public class RedrawScheduler
+{
+    private PApplet _app;
+    private int _maxFrameRate;
+    private AtomicBoolean _requested;
+    private long _drawnFrames;
+    private long _skippedFrames;
+    private volatile boolean _looping;
+
+    public RedrawScheduler(PApplet app, int maxFrameRate)
+    {
+        _app = app;
+        _maxFrameRate = Math.max(1, maxFrameRate);
+        _requested = new AtomicBoolean(true);
+        _drawnFrames = 0;
+        _skippedFrames = 0;
+    }
+
+    public void start()
+    {
+        // the animation loop keeps running so input events stay on the animation thread, it just never runs faster than this
+        _app.frameRate(_maxFrameRate);
+    }
+
+    // without a Processing window there is no animation thread, the caller's thread becomes it
+    public void runLoop(Runnable frame)
+    {
+        long frameNanos = 1000000000L / _maxFrameRate;
+        long nextFrame = System.nanoTime();
+        _looping = true;
+        while(_looping)
+        {
+            frame.run();
+            nextFrame += frameNanos;
+            long remaining = nextFrame - System.nanoTime();
+            if(remaining > 0)
+            {
+                LockSupport.parkNanos(remaining);
+            }
+            else
+            {
+                // fell behind, don't try to catch up with a burst of frames
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+
+    public void stopLoop()
+    {
+        _looping = false;
+    }
+
+    public int getMaxFrameRate()
+    {
+        return _maxFrameRate;
+    }
+
+    // safe from any thread, all requests between two frames end up as one redraw
+    public void requestRedraw()
+    {
+        _requested.set(true);
+    }
+
+    // animation thread only, at the top of draw(): false means nothing changed and the frame can be skipped
+    public boolean beginFrame()
+    {
+        if(_requested.getAndSet(false))
+        {
+            _drawnFrames++;
+            return true;
+        }
+        _skippedFrames++;
+        return false;
+    }
+
+    public long getDrawnFrames()
+    {
+        return _drawnFrames;
+    }
+
+    public long getSkippedFrames()
+    {
+        return _skippedFrames;
+    }
+}
@@ -0,0 +1,41 @@
+package sequencer;
+
+import processing.core.PFont;
+
+// the primitives the UI draws with, see res/usedDrawCommands.txt
+public interface Renderer
+{
+    void beginDraw();
+
+    void endDraw();
+
+    void background(int gray);
+
+    void fill(int gray);
+
+    void fill(int red, int green, int blue);
+
+    void stroke(int gray);
+
+    void noStroke();
+
+    void translate(float x, float y);
+
+    void rect(float x, float y, float width, float height);
+
+    void rect(float x, float y, float width, float height, float radius);
+
+    void line(float x1, float y1, float x2, float y2);
+
+    void ellipse(float x, float y, float width, float height);
+
+    void textFont(PFont font);
+
+    void textAlign(int alignX);
+
+    void text(String text, float x, float y);
+
+    Renderer createLayer(int width, int height);
+
+    void drawLayer(Renderer layer, float x, float y);
+}
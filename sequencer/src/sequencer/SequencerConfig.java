@@ -0,0 +1,111 @@
+package sequencer;
+
+public class SequencerConfig
+{
+    // input routing keeps the armed tracks of a channel in one long bitmask
+    public static final int MAX_TRACKS = 64;
+    public static final int MAX_STEPS = 256;
+    // banks and patterns are addressed by MIDI bank select and program change
+    public static final int MAX_BANKS = 128;
+    public static final int MAX_PATTERNS_PER_BANK = 128;
+    // the clock divides by the tempo, a project file outside this range is rejected
+    public static final int DEFAULT_TEMPO = 125;
+    public static final int MIN_TEMPO = 20;
+    public static final int MAX_TEMPO = 300;
+    public static final int MAX_VOICES = 8;
+
+    private int _tracks;
+    private int _steps;
+    private int _visibleTracks;
+    private int _visibleSteps;
+    private int _banks;
+    private int _patternsPerBank;
+    private int _voiceCap;
+
+    public SequencerConfig(int tracks, int steps, int visibleTracks, int visibleSteps, int banks, int patternsPerBank, int voiceCap)
+    {
+        _tracks = clamp(tracks, 1, MAX_TRACKS);
+        _steps = clamp(steps, 1, MAX_STEPS);
+        _visibleTracks = clamp(visibleTracks, 1, _tracks);
+        _visibleSteps = clamp(visibleSteps, 1, _steps);
+        _banks = clamp(banks, 1, MAX_BANKS);
+        _patternsPerBank = clamp(patternsPerBank, 1, MAX_PATTERNS_PER_BANK);
+        _voiceCap = clamp(voiceCap, 1, MAX_VOICES);
+    }
+
+    public static SequencerConfig fromSystemProperties()
+    {
+        return new SequencerConfig(
+                Integer.getInteger("sequencer.tracks", 8),
+                Integer.getInteger("sequencer.steps", 32),
+                Integer.getInteger("sequencer.visibleTracks", 8),
+                Integer.getInteger("sequencer.visibleSteps", 32),
+                Integer.getInteger("sequencer.banks", 16),
+                Integer.getInteger("sequencer.patternsPerBank", 64),
+                Integer.getInteger("sequencer.voiceCap", MAX_VOICES));
+    }
+
+    // a loaded project brings its own size, only the view settings and the voice cap stay
+    public SequencerConfig withSize(int tracks, int steps, int banks, int patternsPerBank)
+    {
+        return new SequencerConfig(tracks, steps, _visibleTracks, _visibleSteps, banks, patternsPerBank, _voiceCap);
+    }
+
+    private static int clamp(int value, int min, int max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public int getTracks()
+    {
+        return _tracks;
+    }
+
+    public int getSteps()
+    {
+        return _steps;
+    }
+
+    public int getVisibleTracks()
+    {
+        return _visibleTracks;
+    }
+
+    public int getVisibleSteps()
+    {
+        return _visibleSteps;
+    }
+
+    public int getBanks()
+    {
+        return _banks;
+    }
+
+    public int getPatternsPerBank()
+    {
+        return _patternsPerBank;
+    }
+
+    // how many notes of a step are played, a chord recorded with more voices loses its highest notes
+    public int getVoiceCap()
+    {
+        return _voiceCap;
+    }
+
+    public int getTrackPages()
+    {
+        return (_tracks + _visibleTracks - 1) / _visibleTracks;
+    }
+
+    public int getStepPages()
+    {
+        return (_steps + _visibleSteps - 1) / _visibleSteps;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _tracks + " tracks x " + _steps + " steps, pages of " + _visibleTracks + " x " + _visibleSteps + ", " + _banks + " banks of " + _patternsPerBank + " patterns, "
+                + _voiceCap + " voices per step";
+    }
+}
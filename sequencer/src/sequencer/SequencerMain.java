@@ -1,20 +1,18 @@
 package sequencer;
 
 import java.awt.Rectangle;
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
-import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiDevice.Info;
 import javax.sound.midi.MidiMessage;
@@ -30,19 +28,35 @@ import processing.core.PApplet;
 import processing.core.PFont;
 import processing.core.PVector;
 import processing.event.MouseEvent;
+import sequencer.PatternEdit.EditType;
 
 public class SequencerMain extends PApplet
 {
     private static final String INSTRUMENT_SELECT_SCREEN_ID = "instrumentSelect";
     private static final String TRACK_SCREEN_ID = "trackScreen";
+    private static final String PATTERN_SELECT_SCREEN_ID = "patternSelect";
     private static final int STEPS_PER_BEAT = 4;
-    private static final int STEPS = 32;
-    private static final int NUM_TRACKS = 8;
+    private static final int BEATS_PER_BAR = 4;
+    private static final int NO_PATTERN = -1;
+    private static final int BANK_SELECT_CONTROLLER = 0;
+    private static final int TICKS_PER_STEP = 6;
+    private static final int[] GATE_CYCLE_TICKS = new int[]{TICKS_PER_STEP / 2, TICKS_PER_STEP, TICKS_PER_STEP + 1, 2 * TICKS_PER_STEP, 4 * TICKS_PER_STEP};
+    private static final int MAX_VOICES_PER_STEP = SequencerConfig.MAX_VOICES;
+    private static final int DEFAULT_VELOCITY = 120;
+    private static final int INPUT_RING_CAPACITY = 256;
+    private static final int OMNI_CHANNEL = -1;
+    private static final int STEP_HISTORY_SIZE = 8;
+    private static final long LOOKAHEAD_NANOS = 25000000L;
+    private static final int FRAME_RATE = 30;
+    private static final int HIT_GRID_CELL_SIZE = 32;
+    private static final int[] VOLCA_BEATS_NOTES = new int[]{36, 38, 39, 42, 43, 46, 50, 75};
     
+    private SequencerConfig _config;
+    private Path _projectPath;
     private int _beatsPerMinute;
     private int _currentStep;
     private PFont _instrumentSelectFont;
-    private int _millisToPass;
+    private StepClock _stepClock;
     
     private InputState _inputState;
     private Screen _currentScreen;
@@ -52,16 +66,114 @@ public class SequencerMain extends PApplet
 
     private Map<String, Screen> _screens;
     private TracksModel _tracksModel;
-    private Queue<MidiNoteInfo> _noteStack;
+    private NoteOffWheel _noteOffs;
+    private Journal _journal;
+    private FileWorker _fileWorker;
+    private Path _midiExportPath;
+    private Path _midiImportPath;
     
-    private ShortMessage _noteOffMsg;
+    private MidiOutputRegistry _midiOutputs;
+
+    private PlayPositionBoard _playPositions;
+    private int[] _publishedSteps;
+    private PlaySnapshot _playSnapshot;
+    private RedrawScheduler _redraws;
+    private Renderer _renderer;
+    private boolean _headless;
     
-    private static final List<Integer> ARPEGGIATOR_NOTE_SEQUENCE = Arrays.asList(new Integer[]{3, 5, 8});
+    private static final int[] ARPEGGIATOR_NOTE_SEQUENCE = new int[]{3, 5, 8};
     
     public static void main(String[] args)
     {
+        String framebufferPath = System.getProperty("sequencer.framebuffer");
+        if(framebufferPath != null)
+        {
+            // Processing refuses to start without a display, so bypass it completely
+            System.setProperty("java.awt.headless", "true");
+            new SequencerMain().runHeadless(framebufferPath);
+            return;
+        }
         PApplet.main("sequencer.SequencerMain");
     }
+
+    public void runHeadless(String framebufferPath)
+    {
+        FramebufferRenderer framebuffer = null;
+        try
+        {
+            framebuffer = FramebufferRenderer.open(framebufferPath);
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+            return;
+        }
+        _headless = true;
+        _renderer = framebuffer;
+        width = framebuffer.getWidth();
+        height = framebuffer.getHeight();
+        setup();
+        TouchInput touchInput = null;
+        String touchDevice = System.getProperty("sequencer.touchDevice");
+        if(touchDevice != null)
+        {
+            touchInput = new TouchInput(touchDevice, width, height);
+            touchInput.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+        final TouchInput touches = touchInput;
+        _redraws.runLoop(() -> {
+            int[] touch = touches == null ? null : touches.poll();
+            while(touch != null)
+            {
+                mousePressed(new MouseEvent(null, System.currentTimeMillis(), MouseEvent.PRESS, 0, touch[0], touch[1], LEFT, 1));
+                touch = touches.poll();
+            }
+            draw();
+        });
+    }
+
+    // for AllocationCheck: the same wiring setup() does, without screens, journal or a running clock; the caller's thread ticks
+    BeatGenerator prepareTicks(SequencerConfig config, MidiDevice midiInDevice, MidiDevice midiOutDevice)
+    {
+        _config = config;
+        createPlayState();
+        createModels(midiInDevice, midiOutDevice);
+        return new BeatGenerator();
+    }
+
+    // everything the clock thread touches on a tick, apart from the models
+    private void createPlayState()
+    {
+        _beatsPerMinute = SequencerConfig.DEFAULT_TEMPO;
+        _currentStep = 0;
+        _stepClock = new StepClock(new BeatGenerator());
+        _stepClock.setTempo(_beatsPerMinute, STEPS_PER_BEAT * TICKS_PER_STEP);
+        _playStatus = new PlayStatus(PlayStatusType.STOPPED);
+        _priorStatus = PlayStatusType.STOPPED;
+        _playPositions = new PlayPositionBoard(_config.getTracks());
+        _publishedSteps = new int[_config.getTracks()];
+        _playSnapshot = new PlaySnapshot(_config.getTracks());
+        _redraws = new RedrawScheduler(this, Integer.getInteger("sequencer.maxFrameRate", FRAME_RATE));
+    }
+
+    private void createModels(MidiDevice midiInDevice, MidiDevice midiOutDevice)
+    {
+        _noteOffs = new NoteOffWheel(512, 256);
+        _midiOutputs = new MidiOutputRegistry();
+        _tracksModel = new TracksModel(_config.getTracks(), _config.getSteps(), STEPS_PER_BEAT, midiInDevice, _noteOffs, midiOutDevice);
+        _tracksModel.setInputLatency(Integer.getInteger("sequencer.inputLatencyMillis", 0) * 1000000L);
+    }
+
+    TracksModel getTracksModel()
+    {
+        return _tracksModel;
+    }
+
+    PlayStatus getPlayStatus()
+    {
+        return _playStatus;
+    }
     
     @Override
     public void settings()
@@ -74,15 +186,29 @@ public class SequencerMain extends PApplet
     public void setup()
     {
         System.out.println("setup time");
-        _beatsPerMinute = 125;
-        _currentStep = 0;
-        _millisToPass = 60000 / (_beatsPerMinute * STEPS_PER_BEAT);
-        System.out.println("millis per step: " + _millisToPass);
-
-        _instrumentSelectFont = createFont("Arial", 12, true);
+        _config = SequencerConfig.fromSystemProperties();
+        _projectPath = Paths.get(System.getProperty("sequencer.project", "sequencer.project"));
+        _midiExportPath = Paths.get(System.getProperty("sequencer.midiExport", _projectPath + ".mid"));
+        _midiImportPath = Paths.get(System.getProperty("sequencer.midiImport", "import.mid"));
+        _fileWorker = new FileWorker("project-io");
+        ProjectData project = loadProject();
+        if(project != null)
+        {
+            _config = _config.withSize(project.getTracks(), project.getSteps(), project.getBanks(), project.getPatternsPerBank());
+        }
+        System.out.println("config: " + _config);
+        createPlayState();
+        System.out.println("nanos per tick: " + _stepClock.getNanosPerTick());
 
-        _playStatus = new PlayStatus(PlayStatusType.STOPPED);
-        _priorStatus = PlayStatusType.STOPPED;
+        if(!_headless)
+        {
+            _instrumentSelectFont = createFont("Arial", 12, true);
+            _renderer = new ProcessingRenderer(this);
+        }
+        if(Boolean.getBoolean("sequencer.recordDraws"))
+        {
+            _renderer = new RecordingRenderer(_renderer);
+        }
 
         _inputState = new InputState();
         _inputState.setState(InputStateType.REGULAR);
@@ -126,19 +252,23 @@ public class SequencerMain extends PApplet
             if(inDevices.isEmpty() || outDevices.isEmpty())
             {
                 System.out.println("Need at least one midi in and one midi out to work. Sorry.... finishing");
+                if(_headless)
+                {
+                    System.exit(1);
+                }
                 exit();
                 return;
             }
-            JFrame fakeFrame = new JFrame("This frame should not be visible :)");
-            MidiDeviceSelectable[] inDevicesAsArray = inDevices.toArray(new MidiDeviceSelectable[0]);
-            midiInDevice = ((MidiDeviceSelectable) JOptionPane.showInputDialog(fakeFrame, "Select Midi In Device", "Select Midi In Device", JOptionPane.PLAIN_MESSAGE, null, inDevicesAsArray, inDevicesAsArray[0])).getDevice();
+            midiInDevice = selectDevice("Select Midi In Device", inDevices, "sequencer.midiIn");
+            primaryMidiOutDevice = selectDevice("Select Midi Out Device", outDevices, "sequencer.midiOut");
 
-            MidiDeviceSelectable[] outDevicesAsArray = outDevices.toArray(new MidiDeviceSelectable[0]);
-            primaryMidiOutDevice = ((MidiDeviceSelectable) JOptionPane.showInputDialog(fakeFrame, "Select Midi Out Device", "Select Midi Out Device", JOptionPane.PLAIN_MESSAGE, null, outDevicesAsArray, outDevicesAsArray[0])).getDevice();
-
-            _noteStack = new ArrayDeque<>(64);
-            _tracksModel = new TracksModel(NUM_TRACKS, STEPS, STEPS_PER_BEAT, midiInDevice, _noteStack, primaryMidiOutDevice); 
-            _noteOffMsg = new ShortMessage();
+            createModels(midiInDevice, primaryMidiOutDevice);
+            if(project != null)
+            {
+                _tracksModel.applyProject(project, outDevices.stream().map(device -> device.getDevice()).collect(Collectors.toList()));
+            }
+            openJournal(outDevices.stream().map(device -> device.getDevice()).collect(Collectors.toList()));
+            updateLookahead();
         }
         catch (MidiUnavailableException exc)
         {
@@ -151,15 +281,145 @@ public class SequencerMain extends PApplet
         List<MidiDevice> rawOutDevices = outDevices.stream().map(device -> device.getDevice()).collect(Collectors.toList());
         InstrumentSelectScreen  instrumentSelectScreen = new InstrumentSelectScreen(this, _inputState, rawOutDevices);
         instrumentSelectScreen.create();
+        PatternSelectScreen patternSelectScreen = new PatternSelectScreen(this, _tracksModel);
+        patternSelectScreen.create();
         
         _screens.put(TRACK_SCREEN_ID, tracksScreen);
         _screens.put(INSTRUMENT_SELECT_SCREEN_ID, instrumentSelectScreen);
+        _screens.put(PATTERN_SELECT_SCREEN_ID, patternSelectScreen);
         
         _currentScreen = tracksScreen;
-        TimerTask beatGenerator = new BeatGeneratingTimerTask();
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(beatGenerator, 0, _millisToPass);
-        noLoop();
+        _stepClock.start();
+        if(!_headless)
+        {
+            _redraws.start();
+        }
+    }
+
+    private ProjectData loadProject()
+    {
+        if(!Files.exists(_projectPath))
+        {
+            return null;
+        }
+        try
+        {
+            long startNanos = System.nanoTime();
+            ProjectData project = ProjectFile.load(_projectPath);
+            System.out.println("loaded project " + _projectPath + " in " + (System.nanoTime() - startNanos) / 1000 + " micros");
+            return project;
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+            return null;
+        }
+    }
+
+    // edits made after the last snapshot are replayed from the journal before the clock starts
+    private void openJournal(List<MidiDevice> outDevices)
+    {
+        Path journalPath = _projectPath.resolveSibling(_projectPath.getFileName() + ".journal");
+        try
+        {
+            ProjectData project = _tracksModel.captureProject();
+            int replayed = Journal.replay(journalPath, project, TICKS_PER_STEP);
+            if(replayed > 0)
+            {
+                System.out.println("replayed " + replayed + " journal records from " + journalPath);
+                _tracksModel.applyProject(project, outDevices);
+                project = _tracksModel.captureProject();
+            }
+            _journal = new Journal(journalPath, _projectPath, project, TICKS_PER_STEP);
+            if(replayed > 0)
+            {
+                _journal.requestCompaction();
+            }
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    // the capture only shares immutable stores, the worker writes it while the clock plays on
+    private void saveProject(ProjectData project)
+    {
+        _fileWorker.submit(() -> {
+            try
+            {
+                ProjectFile.save(_projectPath, project);
+                System.out.println("saved project " + _projectPath);
+            }
+            catch (IOException exc)
+            {
+                exc.printStackTrace();
+            }
+        });
+    }
+
+    // journal thread or file worker, never the clock thread
+    private void exportMidi(ProjectData project, boolean song)
+    {
+        try
+        {
+            long startNanos = System.nanoTime();
+            new MidiFile(STEPS_PER_BEAT, TICKS_PER_STEP, BEATS_PER_BAR).export(_midiExportPath, project, song);
+            System.out.println("exported " + (song ? "song" : "pattern") + " to " + _midiExportPath + " in " + (System.nanoTime() - startNanos) / 1000 + " micros");
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    // the file is read and quantized on the file worker, the finished patterns go in as one edit
+    public void importMidi(int slot)
+    {
+        Path importPath = _midiImportPath;
+        List<TrackModel> trackModels = _tracksModel.getTrackModels();
+        int[] trackNotes = new int[trackModels.size()];
+        int[] trackChannels = new int[trackModels.size()];
+        for(int trackCnt = 0; trackCnt < trackModels.size(); trackCnt++)
+        {
+            trackNotes[trackCnt] = trackModels.get(trackCnt).getSnapshot().getNote();
+            trackChannels[trackCnt] = trackModels.get(trackCnt).getSnapshot().getChannel();
+        }
+        PatternBank bank = _tracksModel.getBank();
+        _fileWorker.submit(() -> {
+            try
+            {
+                MidiFile midiFile = new MidiFile(STEPS_PER_BEAT, TICKS_PER_STEP, BEATS_PER_BAR);
+                PatternStore[] trackPatterns = midiFile.importPatterns(importPath, trackNotes, trackChannels, bank.getSteps(), bank.getMaxVoices());
+                _tracksModel.submit(new PatternEdit(slot, trackPatterns));
+                System.out.println("imported " + midiFile.getImportedNotes() + " notes from " + importPath + " into pattern " + (slot + 1)
+                        + ", " + midiFile.getDroppedNotes() + " dropped");
+            }
+            catch (IOException exc)
+            {
+                exc.printStackTrace();
+            }
+        });
+    }
+
+    private MidiDevice selectDevice(String title, List<MidiDeviceSelectable> devices, String nameProperty)
+    {
+        String wantedName = System.getProperty(nameProperty);
+        for (MidiDeviceSelectable curDevice : devices)
+        {
+            if(wantedName != null && curDevice.toString().contains(wantedName))
+            {
+                return curDevice.getDevice();
+            }
+        }
+        if(_headless)
+        {
+            // nobody to ask
+            return devices.get(0).getDevice();
+        }
+        JFrame fakeFrame = new JFrame("This frame should not be visible :)");
+        MidiDeviceSelectable[] devicesAsArray = devices.toArray(new MidiDeviceSelectable[0]);
+        return ((MidiDeviceSelectable) JOptionPane.showInputDialog(fakeFrame, title, title, JOptionPane.PLAIN_MESSAGE, null, devicesAsArray, devicesAsArray[0])).getDevice();
     }
 
     public class MidiDeviceSelectable
@@ -183,14 +443,83 @@ public class SequencerMain extends PApplet
         }
     }
     
-    public class BeatGeneratingTimerTask extends TimerTask
+    public class BeatGenerator implements StepClock.TickListener
     {
         @Override
-        public void run()
+        public void tick(long tickNr, long tickTimeNanos)
+        {
+            _tracksModel.applyEdits();
+            _tracksModel.processInput();
+            if(_tracksModel.publishSnapshots())
+            {
+                _redraws.requestRedraw();
+            }
+            releaseDueNotes(tickNr, tickTimeNanos);
+            if(tickNr % TICKS_PER_STEP != 0)
+            {
+                return;
+            }
+            PlayStatusType statusBefore = _priorStatus;
+            generateBeat(tickNr, tickTimeNanos);
+            if(_priorStatus == PlayStatusType.PLAYING || _priorStatus != statusBefore)
+            {
+                publishPlayPosition(tickTimeNanos);
+                _redraws.requestRedraw();
+            }
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        shutdown();
+        super.dispose();
+    }
+
+    private void shutdown()
+    {
+        if(_stepClock != null)
+        {
+            _stepClock.stop();
+        }
+        if(_midiOutputs != null)
+        {
+            _midiOutputs.closeAll();
+        }
+        if(_journal != null)
+        {
+            _journal.close();
+            System.out.println("journal " + _journal);
+        }
+        if(_fileWorker != null)
+        {
+            _fileWorker.close();
+        }
+        if(_renderer instanceof RecordingRenderer)
+        {
+            System.out.println("draw calls in " + _redraws.getDrawnFrames() + " frames: " + _renderer);
+        }
+    }
+
+    // sequencer thread, the clock picks the new tempo up on its next tick
+    public void setTempo(int beatsPerMinute)
+    {
+        _beatsPerMinute = beatsPerMinute;
+        _stepClock.setTempo(_beatsPerMinute, STEPS_PER_BEAT * TICKS_PER_STEP);
+    }
+
+    public void updateLookahead()
+    {
+        // devices without a time base would play our lookahead early, so only look ahead if all tracks can schedule
+        if(_tracksModel.allDevicesHaveTimestamps())
+        {
+            _stepClock.setLookahead(LOOKAHEAD_NANOS);
+        }
+        else
         {
-            generateBeat();
-            redraw();
+            _stepClock.setLookahead(0);
         }
+        System.out.println("lookahead nanos: " + _stepClock.getLookahead());
     }
 
     public static String midiMessageToString(ShortMessage sMessage)
@@ -201,50 +530,76 @@ public class SequencerMain extends PApplet
     @Override
     public void draw()
     {
+        if(!_redraws.beginFrame())
+        {
+            return;
+        }
+        _renderer.beginDraw();
+        PlayStatusType drawnStatus = _playSnapshot.getStatus();
+        // a plain playhead move needs no dirty marking, the bars repaint the two cells that moved themselves
+        if(_playPositions.readInto(_playSnapshot) && drawnStatus != _playSnapshot.getStatus() && _currentScreen instanceof TracksScreen)
+        {
+            _currentScreen.setDirty();
+        }
         _currentScreen.draw();
+        _renderer.endDraw();
+    }
+
+    public Renderer getRenderer()
+    {
+        return _renderer;
+    }
+
+    public void requestRedraw()
+    {
+        _redraws.requestRedraw();
+    }
+
+    public PlaySnapshot getPlaySnapshot()
+    {
+        return _playSnapshot;
+    }
+
+    private void publishPlayPosition(long tickTimeNanos)
+    {
+        _tracksModel.fillCurrentSteps(_publishedSteps);
+        _playPositions.publish(_priorStatus, _currentStep, tickTimeNanos, _publishedSteps);
     }
     
-    public void generateBeat()
+    public void generateBeat(long tickNr, long tickTimeNanos)
     {
-        killOldNotes();
-        switch (_playStatus.getStatus())
+        // the UI thread may change the status at any time, work with one value for the whole step
+        PlayStatusType status = _playStatus.getStatus();
+        switch (status)
         {
             case STOPPED:
                 _currentStep = 0;
-                if(_priorStatus != _playStatus.getStatus())
+                if(_priorStatus != status)
                 {
                     _tracksModel.sendStopped();
-                    if(_currentScreen instanceof TracksScreen)
-                    {
-                        ((TracksScreen)_currentScreen).setDirty();
-                    }
-                    killOldNotes();
+                    releaseAllNotes(tickTimeNanos);
                 }
                 break;
             case PLAYING:
-                if(_priorStatus != _playStatus.getStatus())
+                if(_priorStatus != status)
                 {
                     _tracksModel.sendPlaying();
                 }
-                _tracksModel.sendAdvance(_currentStep);
-                if(_currentScreen instanceof TracksScreen)
-                {
-                    ((TracksScreen)_currentScreen).getSequencerArea().setDirty();
-                }
+                _tracksModel.sendAdvance(tickNr, tickTimeNanos);
                 _currentStep = _currentStep + 1;
-                if(_currentStep >= STEPS)
+                if(_currentStep >= _config.getSteps())
                 {
                     _currentStep = 0;
                 }
                 break;
             case PAUSED:
-                if(_priorStatus != _playStatus.getStatus())
+                if(_priorStatus != status)
                 {
                     _tracksModel.sendPaused();
                 }
                 break;
             case RECORDING:
-                if(_priorStatus != _playStatus.getStatus())
+                if(_priorStatus != status)
                 {
                     _tracksModel.sendRecording();
                 }
@@ -252,33 +607,32 @@ public class SequencerMain extends PApplet
             default:
                 break;
         }
-        _priorStatus = _playStatus.getStatus();
+        _priorStatus = status;
     }
     
-    protected void killOldNotes()
+    protected void releaseDueNotes(long tickNr, long tickTimeNanos)
     {
-        try
-        {
-            while(!_noteStack.isEmpty())
-            {
-                MidiNoteInfo noteInfoToRemove = _noteStack.remove();
-                ShortMessage oldMsg = noteInfoToRemove.getMidiMsg();
-                int oldChannel = oldMsg.getChannel();
-                int oldNote = oldMsg.getData1();
-
-                _noteOffMsg.setMessage(ShortMessage.NOTE_OFF, oldChannel, oldNote, 0);
-                noteInfoToRemove.getOutDevice().getReceiver().send(_noteOffMsg, -1);
-            }
-        }
-        catch (MidiUnavailableException exc1)
+        int entry = _noteOffs.pollDue(tickNr);
+        while(entry != -1)
         {
-            exc1.printStackTrace();
+            sendNoteOff(_noteOffs.getOutput(entry), _noteOffs.getChannel(entry), _noteOffs.getNote(entry), tickTimeNanos);
+            entry = _noteOffs.pollDue(tickNr);
         }
-        catch (InvalidMidiDataException exc)
+    }
+
+    protected void releaseAllNotes(long tickTimeNanos)
+    {
+        while(!_noteOffs.isEmpty())
         {
-            exc.printStackTrace();
+            int entry = _noteOffs.pollAny();
+            sendNoteOff(_noteOffs.getOutput(entry), _noteOffs.getChannel(entry), _noteOffs.getNote(entry), tickTimeNanos);
         }
     }
+
+    protected void sendNoteOff(MidiOutput output, int channel, int note, long tickTimeNanos)
+    {
+        output.send(ShortMessage.NOTE_OFF, channel, note, 0, tickTimeNanos);
+    }
     
     
 
@@ -286,7 +640,7 @@ public class SequencerMain extends PApplet
     public void mousePressed(MouseEvent event)
     {
         _currentScreen.mousePressed(event, _inputState);
-        redraw();
+        requestRedraw();
     }
 
     public InputState getInputState()
@@ -294,6 +648,11 @@ public class SequencerMain extends PApplet
         return _inputState;
     }
 
+    public SequencerConfig getConfig()
+    {
+        return _config;
+    }
+
     public class InputState
     {
         private InputStateType _state;
@@ -326,7 +685,7 @@ public class SequencerMain extends PApplet
                 case STEP_LENGTH_SELECT_ENABLED:
                     _state = InputStateType.REGULAR;
                     stepLengthSelectButton.setDirty();
-                    redraw();
+                    requestRedraw();
                     break;
                 case REGULAR:
                     _state = InputStateType.STEP_LENGTH_SELECT_ENABLED;
@@ -335,12 +694,30 @@ public class SequencerMain extends PApplet
             }
         }
 
+        public void gateSelectPressed(GateSelectButton gateSelectButton)
+        {
+            _prevState = _state;
+            switch (_state)
+            {
+                case GATE_SELECT_ENABLED:
+                    _state = InputStateType.REGULAR;
+                    break;
+                case REGULAR:
+                    _state = InputStateType.GATE_SELECT_ENABLED;
+                    break;
+                default:
+                    break;
+            }
+            gateSelectButton.setDirty();
+            requestRedraw();
+        }
+
         public void maxStepsSet()
         {
             _prevState = _state;
             _state = InputStateType.REGULAR;
             _stepLengthSelectButton.setDirty();
-            redraw();
+            requestRedraw();
         }
 
         public InputStateType getState()
@@ -360,7 +737,7 @@ public class SequencerMain extends PApplet
                 _currentScreen = instrumentSelectScreen;
                 _currentScreen.setDirty();
                 _currentScreen.clear();
-                redraw();
+                requestRedraw();
             }
         }
 
@@ -371,28 +748,55 @@ public class SequencerMain extends PApplet
                 _prevState = _state;
                 _state = InputStateType.REGULAR;
                 _intstrumentSelectingTrack.closeNoteSelector();
-                _intstrumentSelectingTrack.rewriteNote();
-                background(255);
+                _intstrumentSelectingTrack.submit(EditType.REWRITE_NOTE, 0, 0);
+                getRenderer().background(255);
+                _currentScreen = _screens.get(TRACK_SCREEN_ID);
+                _currentScreen.setDirty();
+                _currentScreen.clear();
+                requestRedraw();
+            }
+        }
+
+        public void patternSelectPressed()
+        {
+            if(_state == InputStateType.REGULAR)
+            {
+                _prevState = _state;
+                _state = InputStateType.PATTERN_SELECT_ACTIVE;
+                _currentScreen = _screens.get(PATTERN_SELECT_SCREEN_ID);
+                _currentScreen.setDirty();
+                _currentScreen.clear();
+                requestRedraw();
+            }
+        }
+
+        public void patternSelected()
+        {
+            if(_state == InputStateType.PATTERN_SELECT_ACTIVE)
+            {
+                _prevState = _state;
+                _state = InputStateType.REGULAR;
                 _currentScreen = _screens.get(TRACK_SCREEN_ID);
                 _currentScreen.setDirty();
                 _currentScreen.clear();
-                redraw();
+                requestRedraw();
             }
         }
     }
     
     public enum InputStateType
     {
-        REGULAR, STEP_LENGTH_SELECT_ENABLED, INSTRUMENT_SELECT_ACTIVE
+        REGULAR, STEP_LENGTH_SELECT_ENABLED, GATE_SELECT_ENABLED, INSTRUMENT_SELECT_ACTIVE, PATTERN_SELECT_ACTIVE
     }
     
-    public abstract class SeqButton implements ScreenElement
+    public abstract class SeqButton implements HitTarget
     {
         protected PApplet _mainApp;
         protected Rectangle _area;
         protected PlayStatus _myPlayStatus;
         protected InputState _myInputState;
         protected boolean _isDirty;
+        private Map<Integer, Renderer> _layers;
 
         public SeqButton(PApplet mainApp, Rectangle area, PlayStatus playStatus, InputState inputState)
         {
@@ -401,6 +805,7 @@ public class SequencerMain extends PApplet
             _myPlayStatus = playStatus;
             _myInputState = inputState;
             _isDirty = true;
+            _layers = new HashMap<>();
         }
 
         public void mousePressed(MouseEvent event, InputState inputState)
@@ -418,33 +823,56 @@ public class SequencerMain extends PApplet
         {
             if(_isDirty)
             {
-                int prevCol = _mainApp.getGraphics().fillColor;
-                boolean prevStroke = _mainApp.getGraphics().stroke;
-                int prevStrokeCol = _mainApp.getGraphics().strokeColor;
-                _mainApp.noStroke();
-                
-                setColor();
-                _mainApp.rect(_area.x, _area.y, _area.width, _area.height, 10);
-                _mainApp.fill(prevCol);
-                if(prevStroke)
-                {
-                    _mainApp.stroke(prevStrokeCol);
-                }
-                else
+                // every look of the button is rendered once and then only blitted
+                int layerState = getLayerState();
+                Renderer layer = _layers.get(layerState);
+                if(layer == null)
                 {
-                    _mainApp.noStroke();
+                    layer = renderLayer();
+                    _layers.put(layerState, layer);
                 }
-                buttonSpecificDraw();
+                getRenderer().drawLayer(layer, _area.x, _area.y);
                 _isDirty = false;
             }
         }
 
-        protected void buttonSpecificDraw()
+        private Renderer renderLayer()
+        {
+            Renderer layer = getRenderer().createLayer(_area.width + 1, _area.height + 1);
+            layer.beginDraw();
+            layer.translate(-_area.x, -_area.y);
+            layer.noStroke();
+            setColor(layer);
+            layer.rect(_area.x, _area.y, _area.width, _area.height, 10);
+            layer.stroke(0);
+            buttonSpecificDraw(layer);
+            layer.endDraw();
+            return layer;
+        }
+
+        public Rectangle getArea()
+        {
+            return _area;
+        }
+
+        public void invalidateLayers()
+        {
+            _layers.clear();
+            _isDirty = true;
+        }
+
+        // everything that changes how the button looks has to be part of this value
+        protected int getLayerState()
+        {
+            return 0;
+        }
+
+        protected void buttonSpecificDraw(Renderer target)
         {
             //Overwrite if anything specific should be drawn here
         }
 
-        protected abstract void setColor();
+        protected abstract void setColor(Renderer target);
 
         @Override
         public void setDirty()
@@ -468,6 +896,14 @@ public class SequencerMain extends PApplet
             _trackModel = instrumentSelectingTrack;
         }
 
+        protected void drawLabel(Renderer target, String label)
+        {
+            target.textFont(_instrumentSelectFont);
+            target.textAlign(LEFT);
+            target.fill(0);
+            target.text(label, _area.x + 10, _area.y + 18);
+        }
+
         @Override
         protected void buttonPressed(InputState inputState)
         {
@@ -498,29 +934,35 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        protected void buttonSpecificDraw()
+        protected void buttonSpecificDraw(Renderer target)
         {
             int triangleHeight = 30;
             int triangleWidth = 30;
             int upperleftX = _area.x + 30;
             int upperLeftY = _area.y + 10;
-            _mainApp.line(upperleftX, upperLeftY, upperleftX + triangleWidth, upperLeftY + (triangleHeight/2));
-            _mainApp.line(upperleftX + triangleWidth, upperLeftY + (triangleHeight/2), upperleftX, upperLeftY + triangleHeight);
-            _mainApp.line(upperleftX, upperLeftY + triangleHeight, upperleftX, upperLeftY);
+            target.line(upperleftX, upperLeftY, upperleftX + triangleWidth, upperLeftY + (triangleHeight/2));
+            target.line(upperleftX + triangleWidth, upperLeftY + (triangleHeight/2), upperleftX, upperLeftY + triangleHeight);
+            target.line(upperleftX, upperLeftY + triangleHeight, upperleftX, upperLeftY);
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _myPlayStatus.getStatus().ordinal();
         }
 
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
             switch (_myPlayStatus.getStatus())
             {
                 case PLAYING:
-                    _mainApp.fill(32, 200, 64);
+                    target.fill(32, 200, 64);
                     break;
                 case PAUSED:
-                    _mainApp.fill(16, 128, 32);
+                    target.fill(16, 128, 32);
                     break;
                 case STOPPED:
-                    _mainApp.fill(8, 32, 16);
+                    target.fill(8, 32, 16);
                     break;
                 default:
                     break;
@@ -545,9 +987,9 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            _mainApp.fill(32, 32, 32);
+            target.fill(32, 32, 32);
         }
     }
 
@@ -565,48 +1007,215 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        protected void setColor()
+        protected int getLayerState()
+        {
+            return _myInputState.getState() == InputStateType.STEP_LENGTH_SELECT_ENABLED ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
         {
             switch (_myInputState._state)
             {
                 case REGULAR:
+                case GATE_SELECT_ENABLED:
                 case INSTRUMENT_SELECT_ACTIVE:
-                    _mainApp.fill(128,0,128);
+                case PATTERN_SELECT_ACTIVE:
+                    target.fill(128,0,128);
                     break;
                 case STEP_LENGTH_SELECT_ENABLED:
-                    _mainApp.fill(192,0,192);
+                    target.fill(192,0,192);
                     break;
             }
         }
     }
 
-    public enum PlayStatusType
-    {
-        PAUSED, STOPPED, PLAYING, RECORDING
-    }
-
-    public class PlayStatus
+    public class GateSelectButton extends SeqButton
     {
-        private PlayStatusType _status;
-        
-        public PlayStatus(PlayStatusType status)
+        public GateSelectButton(PApplet mainApp, Rectangle area, PlayStatus playStatus, InputState inputState)
         {
-            _status = status;
+            super(mainApp, area, playStatus, inputState);
         }
 
-        public PlayStatusType getStatus()
+        @Override
+        protected void buttonPressed(InputState inputState)
         {
-            return _status;
+            inputState.gateSelectPressed(this);
         }
 
-        public void set(PlayStatusType status)
+        @Override
+        protected int getLayerState()
         {
-            System.out.println("status set to: " + status);
-            _status = status;
+            return _myInputState.getState() == InputStateType.GATE_SELECT_ENABLED ? 1 : 0;
         }
 
         @Override
-        public String toString()
+        protected void setColor(Renderer target)
+        {
+            if(_myInputState.getState() == InputStateType.GATE_SELECT_ENABLED)
+            {
+                target.fill(0, 192, 192);
+            }
+            else
+            {
+                target.fill(0, 128, 128);
+            }
+        }
+    }
+
+    public abstract class PageButton extends SeqButton
+    {
+        protected TracksScreen _tracksScreen;
+
+        public PageButton(PApplet mainApp, Rectangle area, TracksScreen tracksScreen)
+        {
+            super(mainApp, area, null, null);
+            _tracksScreen = tracksScreen;
+        }
+
+        protected abstract int getPage();
+
+        protected abstract int getPages();
+
+        protected abstract void showPage(int page);
+
+        @Override
+        protected void buttonPressed(InputState inputState)
+        {
+            showPage((getPage() + 1) % getPages());
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return getPage();
+        }
+
+        @Override
+        protected void buttonSpecificDraw(Renderer target)
+        {
+            // one marker per page, the shown one filled
+            int pages = getPages();
+            float markerWidth = (_area.width - 20f) / pages;
+            for(int pageIdx = 0; pageIdx < pages; pageIdx++)
+            {
+                target.fill(pageIdx == getPage() ? 0 : 255);
+                target.rect(_area.x + 10 + pageIdx * markerWidth, _area.y + _area.height - 16, markerWidth - 2, 8);
+            }
+        }
+    }
+
+    public class TrackPageButton extends PageButton
+    {
+        public TrackPageButton(PApplet mainApp, Rectangle area, TracksScreen tracksScreen)
+        {
+            super(mainApp, area, tracksScreen);
+        }
+
+        @Override
+        protected int getPage()
+        {
+            return _tracksScreen.getSequencerArea().getTrackPage();
+        }
+
+        @Override
+        protected int getPages()
+        {
+            return _config.getTrackPages();
+        }
+
+        @Override
+        protected void showPage(int page)
+        {
+            _tracksScreen.showTrackPage(page);
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            target.fill(160, 96, 32);
+        }
+    }
+
+    public class StepPageButton extends PageButton
+    {
+        public StepPageButton(PApplet mainApp, Rectangle area, TracksScreen tracksScreen)
+        {
+            super(mainApp, area, tracksScreen);
+        }
+
+        @Override
+        protected int getPage()
+        {
+            return _tracksScreen.getSequencerArea().getStepPage();
+        }
+
+        @Override
+        protected int getPages()
+        {
+            return _config.getStepPages();
+        }
+
+        @Override
+        protected void showPage(int page)
+        {
+            _tracksScreen.showStepPage(page);
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            target.fill(200, 160, 32);
+        }
+    }
+
+    public class PatternSelectButton extends SeqButton
+    {
+        public PatternSelectButton(PApplet mainApp, Rectangle area, PlayStatus playStatus, InputState inputState)
+        {
+            super(mainApp, area, playStatus, inputState);
+        }
+
+        @Override
+        protected void buttonPressed(InputState inputState)
+        {
+            inputState.patternSelectPressed();
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            target.fill(96, 160, 96);
+        }
+    }
+
+    public enum PlayStatusType
+    {
+        PAUSED, STOPPED, PLAYING, RECORDING
+    }
+
+    public class PlayStatus
+    {
+        private volatile PlayStatusType _status;
+        
+        public PlayStatus(PlayStatusType status)
+        {
+            _status = status;
+        }
+
+        public PlayStatusType getStatus()
+        {
+            return _status;
+        }
+
+        public void set(PlayStatusType status)
+        {
+            System.out.println("status set to: " + status);
+            _status = status;
+        }
+
+        @Override
+        public String toString()
         {
             return _status.toString();
         }
@@ -615,18 +1224,25 @@ public class SequencerMain extends PApplet
     public class SequencerBarArea implements ScreenElement
     {
         private List<StepSequencerBar> _sequencerBars;
+        private int _visibleTracks;
+        private int _trackPage;
+        private int _stepPage;
 
         public SequencerBarArea(SequencerMain mainApp, Rectangle area, TracksModel tracksModel)
         {
             PVector insets = new PVector(10, 5);
             _sequencerBars = new ArrayList<>();
+            _visibleTracks = _config.getVisibleTracks();
+            _trackPage = 0;
+            _stepPage = 0;
             List<TrackModel> tracksModels = tracksModel.getTrackModels();
-            int trackHeight = (int)StepSequencerBar.computHeight(area.height, tracksModels.size(), insets.y);
+            int trackHeight = (int)StepSequencerBar.computHeight(area.height, _visibleTracks, insets.y);
             int cnt = 0;
             for (TrackModel trackModel : tracksModels)
             {
                 StepSequencerBar newTrack = null;
-                Rectangle barArea = new Rectangle(area.x, area.y + cnt * trackHeight, area.width, trackHeight);
+                // every page shows its tracks in the same slots
+                Rectangle barArea = new Rectangle(area.x, area.y + (cnt % _visibleTracks) * trackHeight, area.width, trackHeight);
                 if(!(trackModel instanceof NoteLooperModel))
                 {
                     newTrack = 
@@ -645,17 +1261,52 @@ public class SequencerMain extends PApplet
         @Override
         public void draw()
         {
-            for(int trackCnt = 0; trackCnt < NUM_TRACKS; trackCnt++)
+            for(int trackCnt = getFirstVisibleTrack(); trackCnt < getEndOfVisibleTracks(); trackCnt++)
             {
                 _sequencerBars.get(trackCnt).draw();
             }
         }
 
-        public void mousePressed(MouseEvent event, InputState inputState)
+        public void registerHitTargets(HitGrid<HitTarget> hitGrid)
+        {
+            for(int trackCnt = getFirstVisibleTrack(); trackCnt < getEndOfVisibleTracks(); trackCnt++)
+            {
+                _sequencerBars.get(trackCnt).registerHitTargets(hitGrid);
+            }
+        }
+
+        private int getFirstVisibleTrack()
+        {
+            return _trackPage * _visibleTracks;
+        }
+
+        private int getEndOfVisibleTracks()
+        {
+            return Math.min(_sequencerBars.size(), getFirstVisibleTrack() + _visibleTracks);
+        }
+
+        public int getTrackPage()
         {
-            for(int trackCnt = 0; trackCnt < NUM_TRACKS; trackCnt++)
+            return _trackPage;
+        }
+
+        public void showTrackPage(int trackPage)
+        {
+            _trackPage = trackPage;
+            setDirty();
+        }
+
+        public int getStepPage()
+        {
+            return _stepPage;
+        }
+
+        public void showStepPage(int stepPage)
+        {
+            _stepPage = stepPage;
+            for (StepSequencerBar curBar : _sequencerBars)
             {
-                _sequencerBars.get(trackCnt).mousePressed(event, inputState);
+                curBar.setFirstStep(stepPage * _config.getVisibleSteps());
             }
         }
 
@@ -671,60 +1322,193 @@ public class SequencerMain extends PApplet
     
     public class TrackModel
     {
+        protected int _trackIdx;
         protected int _numberOfSteps;
         protected int _stepsPerBeat;
         protected MidiDevice _midiOutDevice;
+        protected MidiOutput _midiOutput;
         protected int _channelNr;
         private int _note;
         protected Info _midiDeviceInfo;
         protected int _activeSubTrack;
-        protected int _currentStep;
         protected int _curMaxStep;
-        protected List<List<Integer>> _activeSteps;
+        protected PatternStore _pattern;
         protected MidiDevice _midiInDevice;
 
         private boolean _isMuted;
+        private int _voiceCap;
         private boolean _arpeggiatorOn;
-        private Queue<MidiNoteInfo> _noteStack;
-        private NoteSelectMidiReceiver _midiReceiver;
-        private Transmitter _instrumentSelectTransmitter;
+        private NoteOffWheel _noteOffs;
 
-        private Stack<Integer> _arpeggiator;
-        private boolean _wasStopped;
+        private int[] _arpeggiator;
+        private int _arpeggiatorSize;
         private PlayStatusType _state;
+        private volatile TrackSnapshot _snapshot;
+        private boolean _snapshotDirty;
+        private long _snapshotVersion;
 
 
-        public TrackModel(int numSteps, int stepsPerBeat, MidiDevice midiInDevice, Queue<MidiNoteInfo> noteStack)
+        public TrackModel(int numSteps, int stepsPerBeat, MidiDevice midiInDevice, NoteOffWheel noteOffs)
         {
             _numberOfSteps = numSteps;
             _stepsPerBeat = stepsPerBeat;
-            _noteStack = noteStack;
+            _noteOffs = noteOffs;
             _midiInDevice = midiInDevice;
+            _voiceCap = MAX_VOICES_PER_STEP;
             _arpeggiatorOn = false;
-            _arpeggiator = new Stack<>();
-            _wasStopped = false;
+            _arpeggiator = new int[ARPEGGIATOR_NOTE_SEQUENCE.length];
+            _arpeggiatorSize = 0;
             _state = PlayStatusType.STOPPED;
+            _snapshotDirty = true;
+            _snapshotVersion = 0;
         }
 
-        public void rewriteNote()
+        // called from the UI thread, the edit is applied by the sequencer thread at the next tick
+        public void submit(EditType type, int step, int value)
+        {
+            _tracksModel.submit(new PatternEdit(type, _trackIdx, step, value));
+        }
+
+        public void submitDevice(MidiDevice midiOutDevice)
+        {
+            try
+            {
+                // opening the device may block, do it here and only hand the open output to the sequencer thread
+                _tracksModel.submit(new PatternEdit(_trackIdx, _midiOutputs.open(midiOutDevice)));
+            }
+            catch (MidiUnavailableException exc)
+            {
+                exc.printStackTrace();
+            }
+        }
+
+        public void apply(PatternEdit edit)
+        {
+            switch (edit.getType())
+            {
+                case TOGGLE_STEP:
+                    toggleActivationState(edit.getStep());
+                    break;
+                case SET_GATE:
+                    setStepGate(edit.getStep(), edit.getValue());
+                    break;
+                case CYCLE_GATE:
+                    cycleStepGate(edit.getStep());
+                    break;
+                case SET_MAX_STEPS:
+                    setCurrentMaxSteps(edit.getValue());
+                    break;
+                case SET_MUTE:
+                    setMuteStatus(edit.getValue() != 0);
+                    break;
+                case SET_NOTE:
+                    setNote(edit.getValue());
+                    break;
+                case REWRITE_NOTE:
+                    rewriteNote();
+                    break;
+                case SET_CHANNEL:
+                    setChannel(edit.getValue());
+                    break;
+                case SET_ARPEGGIATOR:
+                    setArpeggiator(edit.getValue() != 0);
+                    break;
+                case SET_RECORDING:
+                    if(edit.getValue() != 0)
+                    {
+                        sendRecording();
+                    }
+                    else
+                    {
+                        sendStopRecording();
+                    }
+                    break;
+                case SET_OUTPUT:
+                    setOutput(edit.getOutput());
+                    updateLookahead();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public TrackSnapshot getSnapshot()
+        {
+            return _snapshot;
+        }
+
+        protected void markChanged()
+        {
+            _snapshotDirty = true;
+        }
+
+        // before the journal is open this is the project being restored, nothing to record
+        protected void journal(int type, int step, int value)
+        {
+            if(_journal != null)
+            {
+                _journal.append(type, _trackIdx, step, _tracksModel.getActivePattern(), value);
+            }
+        }
+
+        // the first edit after a publish copies the store, every later one until the next publish writes in place
+        protected PatternStore writablePattern()
+        {
+            if(_pattern.isShared())
+            {
+                _pattern = _tracksModel.copyPattern(_trackIdx, _pattern);
+            }
+            return _pattern;
+        }
+
+        public boolean publishSnapshot()
+        {
+            if(!_snapshotDirty)
+            {
+                return false;
+            }
+            _snapshotDirty = false;
+            _snapshotVersion++;
+            _snapshot = new TrackSnapshot(_snapshotVersion, _pattern, _curMaxStep, _note, _channelNr, _isMuted, _arpeggiatorOn, isRecording(), _midiDeviceInfo);
+            return true;
+        }
+
+        public ProjectData.TrackSettings captureSettings()
+        {
+            String deviceName = _midiDeviceInfo == null ? "" : _midiDeviceInfo.getName();
+            return new ProjectData.TrackSettings(_note, _channelNr, _curMaxStep, _isMuted, _arpeggiatorOn, deviceName);
+        }
+
+        public void applySettings(ProjectData.TrackSettings settings, List<MidiDevice> outDevices)
         {
-            int numOfSteps = _activeSteps.size();
-            for (int stepIdx = 0; stepIdx < numOfSteps; stepIdx++)
+            setNote(settings.getNote());
+            setChannel(settings.getChannel());
+            setCurrentMaxSteps(Math.max(1, Math.min(_numberOfSteps, settings.getMaxSteps())));
+            setMuteStatus(settings.isMuted());
+            setArpeggiator(settings.isArpeggiatorOn());
+            for (MidiDevice curDevice : outDevices)
             {
-                if(isStepActive(stepIdx))
+                if(curDevice.getDeviceInfo().getName().equals(settings.getDeviceName()) && curDevice.getDeviceInfo() != _midiDeviceInfo)
                 {
-                    _activeSteps.get(stepIdx).add(_note);
+                    setDevice(curDevice);
+                    break;
                 }
             }
         }
 
-        public void sendStopped()
+        public void rewriteNote()
         {
-            if(!_wasStopped)
+            PatternStore pattern = writablePattern();
+            for(int stepIdx = pattern.nextActive(0); stepIdx != -1; stepIdx = pattern.nextActive(stepIdx + 1))
             {
-                setCurrentStep(0);
-                _wasStopped = true;
+                pattern.setNote(stepIdx, _note, pattern.getVelocity(stepIdx, 0));
             }
+            journal(Journal.REWRITE_NOTE, 0, _note);
+            markChanged();
+        }
+
+        public void sendStopped()
+        {
         }
         
         public int getNumberOfSteps()
@@ -732,6 +1516,16 @@ public class SequencerMain extends PApplet
             return _numberOfSteps;
         }
 
+        public int getTrackIndex()
+        {
+            return _trackIdx;
+        }
+
+        public void setTrackIndex(int trackIdx)
+        {
+            _trackIdx = trackIdx;
+        }
+
         public int getStepsPerBeat()
         {
             return _stepsPerBeat;
@@ -741,12 +1535,7 @@ public class SequencerMain extends PApplet
         {
             try
             {
-                if(!primaryMidiOutDevice.isOpen())
-                {
-                    primaryMidiOutDevice.open();
-                }
-                _midiOutDevice = primaryMidiOutDevice;
-                _midiDeviceInfo = primaryMidiOutDevice.getDeviceInfo();
+                setOutput(_midiOutputs.open(primaryMidiOutDevice));
             }
             catch (MidiUnavailableException exc)
             {
@@ -754,11 +1543,28 @@ public class SequencerMain extends PApplet
             }
         }
 
+        protected void setOutput(MidiOutput midiOutput)
+        {
+            _midiOutput = midiOutput;
+            _midiOutDevice = midiOutput.getDevice();
+            _midiDeviceInfo = _midiOutDevice.getDeviceInfo();
+            if(_journal != null)
+            {
+                _journal.setDevice(_trackIdx, _midiDeviceInfo.getName());
+            }
+            markChanged();
+        }
+
         public Info getDeviceInfo()
         {
             return _midiDeviceInfo;
         }
 
+        public boolean hasTimestamps()
+        {
+            return _midiOutput != null && _midiOutput.getTimeBase().hasTimestamps();
+        }
+
         public int getChannel()
         {
             return _channelNr;
@@ -767,6 +1573,8 @@ public class SequencerMain extends PApplet
         public void setChannel(int channelNr)
         {
             _channelNr = channelNr;
+            journal(Journal.SET_CHANNEL, 0, channelNr);
+            markChanged();
         }
 
         public int getNote()
@@ -777,6 +1585,8 @@ public class SequencerMain extends PApplet
         public void setNote(int note)
         {
             _note = note;
+            journal(Journal.SET_NOTE, 0, note);
+            markChanged();
         }
 
         public void setActiveSubTrack(int activeSubTrack)
@@ -784,36 +1594,34 @@ public class SequencerMain extends PApplet
             _activeSubTrack = activeSubTrack;
         }
 
-        public void setCurrentStep(int currentStep)
+        // tracks don't count steps themselves, their position follows from the steps played since start
+        public int getStepAt(int stepCount)
         {
-            this._currentStep = currentStep;
+            return stepCount % _curMaxStep;
         }
 
         public void setCurrentMaxSteps(int currentMaxSteps)
         {
             _curMaxStep = currentMaxSteps;
+            journal(Journal.SET_MAX_STEPS, 0, currentMaxSteps);
+            markChanged();
         }
 
-        public void createTracks(int steps)
+        // a switch to the slot that is already playing publishes nothing
+        public void setPattern(PatternStore pattern)
         {
-            _activeSteps = new ArrayList<>();
-            for(int stepIdx = 0; stepIdx < steps; stepIdx++)
+            if(_pattern == pattern)
             {
-                _activeSteps.add(new ArrayList<>()); // empty list is no note
+                return;
             }
+            _pattern = pattern;
+            markChanged();
         }
 
         public void initialize()
         {
             setActiveSubTrack(0);
-            setCurrentStep(0);
             setCurrentMaxSteps(_numberOfSteps);
-            createTracks(_numberOfSteps);
-        }
-
-        public boolean isCurrentStep(int stepIdx)
-        {
-            return stepIdx == this._currentStep;
         }
 
         public boolean isCurrentMaxStep(int step)
@@ -833,79 +1641,127 @@ public class SequencerMain extends PApplet
 
         public void toggleActivationState(int activatedButton)
         {
-            if(_activeSteps.get(activatedButton).isEmpty())
+            if(!_pattern.isActive(activatedButton))
             {
-                _activeSteps.get(activatedButton).add(getNote());
+                writablePattern().addNote(activatedButton, getNote(), DEFAULT_VELOCITY);
+                journal(Journal.STEP_ON, activatedButton, getNote() << 8 | DEFAULT_VELOCITY);
             }
             else
             {
-                _activeSteps.get(activatedButton).clear();
+                writablePattern().clear(activatedButton);
+                journal(Journal.STEP_OFF, activatedButton, 0);
             }
+            markChanged();
         }
 
         public boolean isStepActive(int stepIdx)
         {
-            return !_activeSteps.get(stepIdx).isEmpty();
+            return _pattern.isActive(stepIdx);
+        }
+
+        public int getStepGate(int stepIdx)
+        {
+            return _pattern.getGate(stepIdx);
         }
 
-        public void sendAdvance(int currentStep)
+        public void setStepGate(int stepIdx, int gateTicks)
         {
-            if (!isMuted())
+            writablePattern().setGate(stepIdx, gateTicks);
+            journal(Journal.SET_GATE, stepIdx, gateTicks);
+            markChanged();
+        }
+
+        public void cycleStepGate(int stepIdx)
+        {
+            int nextGate = GATE_CYCLE_TICKS[0];
+            for(int gateIdx = 0; gateIdx < GATE_CYCLE_TICKS.length - 1; gateIdx++)
             {
-                if (isStepActive(_currentStep))
-                {
-                    Integer currentNote = _activeSteps.get(_currentStep).get(0);
-                    playNote(currentNote);
-                    reloadArpeggiator(currentNote);
-                }
-                else if (_arpeggiatorOn && !_arpeggiator.empty())
+                if(GATE_CYCLE_TICKS[gateIdx] == _pattern.getGate(stepIdx))
                 {
-                    playNote(_arpeggiator.pop().intValue());
+                    nextGate = GATE_CYCLE_TICKS[gateIdx + 1];
                 }
             }
-            _currentStep++;
-            if (_currentStep >= _curMaxStep)
-            {
-                _currentStep = 0;
-            }
+            setStepGate(stepIdx, nextGate);
         }
 
-        private void reloadArpeggiator(Integer currentNote)
+        public boolean isDefaultGateLength(int gateTicks)
         {
-            _arpeggiator.clear();
-            for (Integer curArpNote : ARPEGGIATOR_NOTE_SEQUENCE)
-            {
-                _arpeggiator.push(currentNote + curArpNote);
-            }
+            return gateTicks == TICKS_PER_STEP;
         }
 
-        private void playNote(int noteNumber)
+        public boolean isShortGateLength(int gateTicks)
         {
-            try
+            return gateTicks < TICKS_PER_STEP;
+        }
+
+        public void sendAdvance(int stepCount, long tickNr, long tickTimeNanos)
+        {
+            if (isMuted())
             {
-                ShortMessage midiMsg = new ShortMessage();
-                midiMsg.setMessage(ShortMessage.NOTE_ON, _channelNr, noteNumber, 120);
-                _midiOutDevice.getReceiver().send(midiMsg, -1);
-                _noteStack.add(new MidiNoteInfo(_midiOutDevice, midiMsg));
+                return;
             }
-            catch (InvalidMidiDataException exc)
+            int stepIdx = getStepAt(stepCount);
+            int gateTicks = _pattern.getGate(stepIdx);
+            if (_pattern.isActive(stepIdx))
             {
-                exc.printStackTrace();
+                int voices = Math.min(_pattern.getVoiceCount(stepIdx), _voiceCap);
+                for(int voiceIdx = 0; voiceIdx < voices; voiceIdx++)
+                {
+                    playNote(_pattern.getNote(stepIdx, voiceIdx), _pattern.getVelocity(stepIdx, voiceIdx), gateTicks, tickNr, tickTimeNanos);
+                }
+                reloadArpeggiator(_pattern.getNote(stepIdx, 0));
             }
-            catch (MidiUnavailableException exc)
+            else if (_arpeggiatorOn && _arpeggiatorSize > 0)
             {
-                exc.printStackTrace();
+                _arpeggiatorSize--;
+                playNote(_arpeggiator[_arpeggiatorSize], DEFAULT_VELOCITY, gateTicks, tickNr, tickTimeNanos);
             }
         }
 
-        public boolean isMuted()
+        // tracks without anything to play are skipped by the tick entirely
+        public boolean hasEvents()
         {
-            return _isMuted;
+            return !isMuted() && (_pattern.nextActive(0) != -1 || (_arpeggiatorOn && _arpeggiatorSize > 0));
         }
-        
-        public void setMuteStatus(boolean status)
+
+        private void reloadArpeggiator(int currentNote)
         {
-            _isMuted = status;
+            _arpeggiatorSize = 0;
+            for (int curArpNote : ARPEGGIATOR_NOTE_SEQUENCE)
+            {
+                _arpeggiator[_arpeggiatorSize] = currentNote + curArpNote;
+                _arpeggiatorSize++;
+            }
+        }
+
+        private void playNote(int noteNumber, int velocity, int gateTicks, long tickNr, long tickTimeNanos)
+        {
+            int heldEntry = _noteOffs.findPending(_midiOutput, _channelNr, noteNumber);
+            if(heldEntry != -1)
+            {
+                // still held from a long gate, retrigger instead of letting the old note-off cut the new note
+                _noteOffs.remove(heldEntry);
+                sendNoteOff(_midiOutput, _channelNr, noteNumber, tickTimeNanos);
+            }
+            _midiOutput.send(ShortMessage.NOTE_ON, _channelNr, noteNumber, velocity, tickTimeNanos);
+            _noteOffs.schedule(tickNr + gateTicks, _midiOutput, _channelNr, noteNumber);
+        }
+
+        public boolean isMuted()
+        {
+            return _isMuted;
+        }
+
+        public void setVoiceCap(int voiceCap)
+        {
+            _voiceCap = Math.max(1, Math.min(MAX_VOICES_PER_STEP, voiceCap));
+        }
+        
+        public void setMuteStatus(boolean status)
+        {
+            _isMuted = status;
+            journal(Journal.SET_MUTE, 0, status ? 1 : 0);
+            markChanged();
         }
 
         public void sendRecording()
@@ -916,40 +1772,23 @@ public class SequencerMain extends PApplet
         {
         }
 
+
         public void sendPaused()
         {
         }
 
         public void sendPlaying()
         {
-            _wasStopped = false;
         }
 
         public void openMidiInDevice()
         {
-            try
-            {
-                if(!_midiInDevice.isOpen())
-                {
-                    _midiInDevice.open();
-                }
-                _instrumentSelectTransmitter = _midiInDevice.getTransmitter();
-                if(_midiReceiver == null)
-                {
-                    _midiReceiver = new NoteSelectMidiReceiver();
-                }
-                _midiReceiver.setInstrumentSelectingTrack(this);
-                _instrumentSelectTransmitter.setReceiver(_midiReceiver);
-            }
-            catch (MidiUnavailableException exc)
-            {
-                exc.printStackTrace();
-            }
+            _tracksModel.setNoteSelectTrack(this);
         }
 
         public void closeNoteSelector()
         {
-            _instrumentSelectTransmitter.close();
+            _tracksModel.setNoteSelectTrack(null);
         }
 
         public boolean isArpeggiatorOn()
@@ -960,6 +1799,13 @@ public class SequencerMain extends PApplet
         public void setArpeggiator(boolean isOn)
         {
             _arpeggiatorOn = isOn;
+            journal(Journal.SET_ARPEGGIATOR, 0, isOn ? 1 : 0);
+            markChanged();
+        }
+
+        public boolean isRecording()
+        {
+            return false;
         }
 
         public boolean isPlaying()
@@ -972,37 +1818,85 @@ public class SequencerMain extends PApplet
     {
         private List<TrackModel> _tracksModels;
         private MidiDevice _midiInDevice;
-
-        public TracksModel(int numTracks, int steps, int stepsPerBeat, MidiDevice midiInDevice, Queue<MidiNoteInfo> noteStack, MidiDevice outDevice)
+        private MidiInputDispatcher _inputDispatcher;
+        private Transmitter _inputTransmitter;
+        private NoteLooperModel[] _loopers;
+        private long[] _armedByChannel;
+        private volatile boolean _routingDirty;
+        private volatile TrackModel _noteSelectTrack;
+        private ConcurrentLinkedQueue<PatternEdit> _edits;
+        private TrackModel[] _tracks;
+        private long _busyTracks;
+        private int _stepCount;
+        private StepHistory _stepHistory;
+        private long _inputLatencyNanos;
+        private PatternBank _bank;
+        private volatile int _activePattern;
+        private volatile int _queuedPattern;
+        private int _programBank;
+        private boolean _running;
+        private volatile boolean _songMode;
+        private Arrangement _arrangement;
+        private volatile int _songEntry;
+        private long _songMutes;
+        private int _barsLeft;
+        private int _nextEntry;
+        private boolean _nextResolved;
+        private PatternStore[] _nextPatterns;
+
+        public TracksModel(int numTracks, int steps, int stepsPerBeat, MidiDevice midiInDevice, NoteOffWheel noteOffs, MidiDevice outDevice)
         {
             _midiInDevice = midiInDevice;
+            _loopers = new NoteLooperModel[numTracks];
+            _armedByChannel = new long[16];
+            _routingDirty = true;
+            _edits = new ConcurrentLinkedQueue<>();
+            _tracks = new TrackModel[numTracks];
+            _busyTracks = 0;
+            _stepCount = 0;
+            _stepHistory = new StepHistory(STEP_HISTORY_SIZE);
+            _inputLatencyNanos = 0;
+            _bank = new PatternBank(_config.getBanks(), _config.getPatternsPerBank(), numTracks, steps, MAX_VOICES_PER_STEP, TICKS_PER_STEP);
+            _activePattern = 0;
+            _queuedPattern = NO_PATTERN;
+            _programBank = 0;
+            _running = false;
+            _songMode = false;
+            _arrangement = new Arrangement();
+            _songEntry = NO_PATTERN;
+            _songMutes = 0;
+            _nextResolved = false;
+            _nextPatterns = new PatternStore[numTracks];
             _tracksModels = new ArrayList<TrackModel>();
             for(int trackCnt = 0; trackCnt < numTracks; trackCnt++)
             {
                 
                 TrackModel newModel = null;
-                newModel = new NoteLooperModel(steps, stepsPerBeat, _midiInDevice, noteStack);
+                newModel = new NoteLooperModel(steps, stepsPerBeat, _midiInDevice, noteOffs);
+                newModel.setTrackIndex(trackCnt);
                 _tracksModels.add(newModel);
+                _tracks[trackCnt] = newModel;
+                _loopers[trackCnt] = (NoteLooperModel)newModel;
             }
+            openMidiInDevice();
             for (TrackModel curTrackModel : _tracksModels)
             {
                 curTrackModel.setDevice(outDevice);
                 curTrackModel.setChannel(0);
+                curTrackModel.setVoiceCap(_config.getVoiceCap());
                 curTrackModel.initialize();
+                curTrackModel.setPattern(_bank.getPattern(_activePattern, curTrackModel.getTrackIndex()));
             }
             setDefaultVolcaBeatsMapping();
+            publishSnapshots();
         }
 
         private void setDefaultVolcaBeatsMapping()
         {
-            _tracksModels.get(0).setNote(36);
-            _tracksModels.get(1).setNote(38);
-            _tracksModels.get(2).setNote(39);
-            _tracksModels.get(3).setNote(42);
-            _tracksModels.get(4).setNote(43);
-            _tracksModels.get(5).setNote(46);
-            _tracksModels.get(6).setNote(50);
-            _tracksModels.get(7).setNote(75);
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                _tracks[trackCnt].setNote(VOLCA_BEATS_NOTES[trackCnt % VOLCA_BEATS_NOTES.length]);
+            }
         }
 
         public List<TrackModel> getTrackModels()
@@ -1010,286 +1904,1343 @@ public class SequencerMain extends PApplet
             return _tracksModels;
         }
         
-        public void sendAdvance(int currentStep)
+        public void sendAdvance(long tickNr, long tickTimeNanos)
         {
-            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            if(_stepCount % (BEATS_PER_BAR * STEPS_PER_BEAT) == 0)
+            {
+                if(isSongPlaying())
+                {
+                    advanceSong();
+                }
+                else
+                {
+                    // a song's mutes end with the song
+                    _songMutes = 0;
+                    if(_queuedPattern != NO_PATTERN)
+                    {
+                        switchPattern();
+                    }
+                }
+            }
+            else if(isSongPlaying() && !_nextResolved)
+            {
+                // look the next entry up between bar lines, so the bar line itself only swaps arrays
+                resolveNextEntry();
+            }
+            _stepHistory.record(_stepCount, tickTimeNanos);
+            long busyTracks = _busyTracks & ~_songMutes;
+            while(busyTracks != 0)
             {
-                _tracksModels.get(trackCnt).sendAdvance(currentStep);
+                int trackIdx = Long.numberOfTrailingZeros(busyTracks);
+                busyTracks &= busyTracks - 1;
+                _tracks[trackIdx].sendAdvance(_stepCount, tickNr, tickTimeNanos);
+                updateBusy(trackIdx);
             }
+            _stepCount++;
         }
-        
-        public void sendStopped()
+
+        private void updateBusy(int trackIdx)
         {
-            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            if(_tracks[trackIdx].hasEvents())
             {
-                _tracksModels.get(trackCnt).sendStopped();
+                _busyTracks |= 1L << trackIdx;
+            }
+            else
+            {
+                _busyTracks &= ~(1L << trackIdx);
             }
         }
 
-        public void sendRecording()
+        public int getStepCount()
         {
-            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            return _stepCount;
+        }
+
+        public PatternBank getBank()
+        {
+            return _bank;
+        }
+
+        public int getActivePattern()
+        {
+            return _activePattern;
+        }
+
+        public int getQueuedPattern()
+        {
+            return _queuedPattern;
+        }
+
+        // sequencer thread only, the switch itself happens on the next bar line
+        private void queuePattern(int slot)
+        {
+            if(slot < 0 || slot >= _bank.getSlots())
             {
-                _tracksModels.get(trackCnt).sendRecording();
+                return;
             }
+            // allocating a fresh slot happens now, not in the tick that plays the bar line
+            _bank.allocate(slot);
+            _queuedPattern = slot;
+            if(!_running)
+            {
+                switchPattern();
+            }
+            _redraws.requestRedraw();
         }
 
-        public void sendPaused()
+        // sequencer thread, the stores are shared rather than copied: the next edit of a track copies its store first
+        public ProjectData captureProject()
         {
-            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            ProjectData project = new ProjectData(_tracks.length, _bank.getSteps(), _bank.getMaxVoices(), _bank.getBanks(), _bank.getPatternsPerBank());
+            project.setTempo(_beatsPerMinute);
+            project.setActivePattern(_activePattern);
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
             {
-                _tracksModels.get(trackCnt).sendPaused();
+                project.setTrackSettings(trackCnt, _tracks[trackCnt].captureSettings());
+            }
+            for(int slot = 0; slot < _bank.getSlots(); slot++)
+            {
+                if(_bank.isAllocated(slot))
+                {
+                    PatternStore[] trackPatterns = new PatternStore[_tracks.length];
+                    for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+                    {
+                        trackPatterns[trackCnt] = _bank.getPattern(slot, trackCnt).share();
+                    }
+                    project.setPatterns(slot, trackPatterns);
+                }
             }
+            // arrangements are never changed once handed over
+            project.setArrangement(_arrangement);
+            return project;
         }
 
-        public void sendPlaying()
+        // only before the clock starts, the config was sized to the project already
+        public void applyProject(ProjectData project, List<MidiDevice> outDevices)
         {
-            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            for(int trackCnt = 0; trackCnt < Math.min(_tracks.length, project.getTracks()); trackCnt++)
             {
-                _tracksModels.get(trackCnt).sendPlaying();
+                if(project.getTrackSettings(trackCnt) != null)
+                {
+                    _tracks[trackCnt].applySettings(project.getTrackSettings(trackCnt), outDevices);
+                }
+            }
+            for(int slot = 0; slot < Math.min(_bank.getSlots(), project.getSlots()); slot++)
+            {
+                PatternStore[] trackPatterns = project.getPatterns(slot);
+                if(trackPatterns != null && trackPatterns.length == _tracks.length && project.getSteps() == _bank.getSteps())
+                {
+                    _bank.setPatterns(slot, trackPatterns);
+                }
             }
+            setArrangement(project.getArrangement());
+            setTempo(project.getTempo());
+            _queuedPattern = Math.max(0, Math.min(_bank.getSlots() - 1, project.getActivePattern()));
+            switchPattern();
+            publishSnapshots();
         }
 
-        public MidiDevice getMidiInDevice()
+        private boolean isSongPlaying()
         {
-            return _midiInDevice;
+            return _songMode && _arrangement.size() > 0;
         }
-    }
 
-    public class TracksScreen implements Screen
-    {
-        private List<ScreenElement> _elements;
-        private SequencerMain _parent;
-        private SequencerBarArea _sequencerBarsArea;
-        private TracksModel _tracksModel;
-        private boolean _clearBackground;
-        
-        public TracksScreen(SequencerMain parent, TracksModel tracksModel)
+        public boolean isSongMode()
         {
-            _elements = new ArrayList<>();
-            _parent = parent;
-            this._tracksModel = tracksModel;
-            _clearBackground = true;
+            return _songMode;
+        }
+
+        public int getSongEntry()
+        {
+            return _songEntry;
+        }
+
+        private void setSongMode(boolean songMode)
+        {
+            _songMode = songMode;
+            // a song always starts from its first entry on the next bar line
+            _songEntry = NO_PATTERN;
+            _nextResolved = false;
+            _redraws.requestRedraw();
+        }
+
+        private void setArrangement(Arrangement arrangement)
+        {
+            for(int entryIdx = 0; entryIdx < arrangement.size(); entryIdx++)
+            {
+                if(arrangement.getSlot(entryIdx) < 0 || arrangement.getSlot(entryIdx) >= _bank.getSlots())
+                {
+                    System.out.println("arrangement refers to missing pattern " + arrangement.getSlot(entryIdx) + ", ignored");
+                    return;
+                }
+            }
+            // every slot the song uses is allocated here once, playback never allocates
+            for(int entryIdx = 0; entryIdx < arrangement.size(); entryIdx++)
+            {
+                _bank.allocate(arrangement.getSlot(entryIdx));
+            }
+            _arrangement = arrangement;
+            if(_journal != null)
+            {
+                _journal.setArrangement(arrangement);
+            }
+            if(_songEntry >= arrangement.size())
+            {
+                _songEntry = NO_PATTERN;
+            }
+            _nextResolved = false;
+        }
+
+        private void advanceSong()
+        {
+            _queuedPattern = NO_PATTERN;
+            if(_songEntry != NO_PATTERN && _barsLeft > 0)
+            {
+                _barsLeft--;
+                return;
+            }
+            if(!_nextResolved)
+            {
+                resolveNextEntry();
+            }
+            Arrangement song = _arrangement;
+            _songEntry = _nextEntry;
+            _barsLeft = song.getRepeats(_songEntry) - 1;
+            _activePattern = song.getSlot(_songEntry);
+            if(song.getTempo(_songEntry) != Arrangement.KEEP_TEMPO)
+            {
+                setTempo(song.getTempo(_songEntry));
+            }
+            // the entry's mutes stay out of the tracks, they are neither the user's mutes nor journaled
+            _songMutes = song.getMuteMask(_songEntry);
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                _tracks[trackCnt].setPattern(_nextPatterns[trackCnt]);
+                updateBusy(trackCnt);
+            }
+            _nextResolved = false;
+        }
+
+        private void resolveNextEntry()
+        {
+            // the song loops, after the last entry comes the first
+            _nextEntry = (_songEntry + 1) % _arrangement.size();
+            int slot = _arrangement.getSlot(_nextEntry);
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                _nextPatterns[trackCnt] = _bank.getPattern(slot, trackCnt);
+            }
+            _nextResolved = true;
+        }
+
+        // an imported slot replaces the old one whole, if it is playing the tracks move over at once
+        private void setPatterns(int slot, PatternStore[] trackPatterns)
+        {
+            if(slot < 0 || slot >= _bank.getSlots() || trackPatterns.length != _tracks.length)
+            {
+                return;
+            }
+            // the importer lets go of the stores, from here on the bank and the journal share them until one writes
+            for (PatternStore curPattern : trackPatterns)
+            {
+                curPattern.share();
+            }
+            _bank.setPatterns(slot, trackPatterns);
+            if(slot == _activePattern)
+            {
+                for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+                {
+                    _tracks[trackCnt].setPattern(trackPatterns[trackCnt]);
+                    updateBusy(trackCnt);
+                }
+            }
+            _nextResolved = false;
+            if(_journal != null)
+            {
+                // both sides swap copies into their slot array, so only the array itself is duplicated
+                _journal.setPatterns(slot, trackPatterns.clone());
+            }
+        }
+
+        // the copy takes the shared store's place in the bank and in a song entry resolved ahead
+        public PatternStore copyPattern(int trackIdx, PatternStore pattern)
+        {
+            PatternStore copy = pattern.copy();
+            PatternStore[] trackPatterns = _bank.getPatterns(_activePattern);
+            if(trackPatterns != null && trackPatterns[trackIdx] == pattern)
+            {
+                trackPatterns[trackIdx] = copy;
+            }
+            if(_nextPatterns[trackIdx] == pattern)
+            {
+                _nextPatterns[trackIdx] = copy;
+            }
+            return copy;
+        }
+
+        private void switchPattern()
+        {
+            int slot = _queuedPattern;
+            _queuedPattern = NO_PATTERN;
+            _activePattern = slot;
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                _tracks[trackCnt].setPattern(_bank.getPattern(slot, trackCnt));
+                updateBusy(trackCnt);
+            }
+            if(_journal != null)
+            {
+                _journal.append(Journal.SELECT_PATTERN, 0, 0, slot, 0);
+            }
+        }
+
+        public void submit(PatternEdit edit)
+        {
+            _edits.add(edit);
+        }
+
+        // sequencer thread only: pattern state is never written anywhere else, so the tick path needs no locks
+        public void applyEdits()
+        {
+            if(_journal != null && _journal.isResyncNeeded())
+            {
+                _journal.resync(captureProject());
+            }
+            // edits wait in their queue while the journal catches up, so editing alone never overflows its ring
+            if(_journal != null && _journal.isBackPressured())
+            {
+                return;
+            }
+            PatternEdit edit = _edits.poll();
+            while(edit != null)
+            {
+                switch (edit.getType())
+                {
+                    case SELECT_PATTERN:
+                        queuePattern(edit.getValue());
+                        break;
+                    case SET_SONG_MODE:
+                        setSongMode(edit.getValue() != 0);
+                        break;
+                    case SET_ARRANGEMENT:
+                        setArrangement(edit.getArrangement());
+                        break;
+                    case EXPORT_MIDI:
+                        boolean song = isSongPlaying();
+                        // the journal thread exports its own copy of the project, without one or with its ring full a capture goes to the file worker
+                        if(_journal == null || !_journal.readShadow(project -> exportMidi(project, song)))
+                        {
+                            ProjectData project = captureProject();
+                            _fileWorker.submit(() -> exportMidi(project, song));
+                        }
+                        break;
+                    case SET_PATTERNS:
+                        setPatterns(edit.getValue(), edit.getPatterns());
+                        break;
+                    case SAVE_PROJECT:
+                        // the journal thread already holds a copy of everything, it only has to write it
+                        if(_journal != null)
+                        {
+                            _journal.requestCompaction();
+                        }
+                        else
+                        {
+                            saveProject(captureProject());
+                        }
+                        break;
+                    default:
+                        _tracksModels.get(edit.getTrackIndex()).apply(edit);
+                        break;
+                }
+                edit = _edits.poll();
+            }
+        }
+
+        // every change to a track ends up here, so this is also where it joins or leaves the busy set
+        public boolean publishSnapshots()
+        {
+            boolean published = false;
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                if(_tracks[trackCnt].publishSnapshot())
+                {
+                    updateBusy(trackCnt);
+                    published = true;
+                }
+            }
+            return published;
+        }
+
+        public void setInputLatency(long inputLatencyNanos)
+        {
+            _inputLatencyNanos = inputLatencyNanos;
+        }
+
+        private void openMidiInDevice()
+        {
+            try
+            {
+                if(!_midiInDevice.isOpen())
+                {
+                    _midiInDevice.open();
+                }
+                // one transmitter for the whole device, routing to the tracks happens on the sequencer thread
+                _inputDispatcher = new MidiInputDispatcher(_midiInDevice);
+                _inputTransmitter = _midiInDevice.getTransmitter();
+                _inputTransmitter.setReceiver(_inputDispatcher);
+            }
+            catch (MidiUnavailableException exc)
+            {
+                System.out.println("For this Midi Device:" + _midiInDevice.getDeviceInfo().getName());
+                exc.printStackTrace();
+            }
+        }
+
+        public void setNoteSelectTrack(TrackModel noteSelectTrack)
+        {
+            _noteSelectTrack = noteSelectTrack;
+        }
+
+        public void routingChanged()
+        {
+            _routingDirty = true;
+        }
+
+        private void updateRouting()
+        {
+            for(int channel = 0; channel < _armedByChannel.length; channel++)
+            {
+                long armedTracks = 0;
+                for(int trackCnt = 0; trackCnt < _loopers.length; trackCnt++)
+                {
+                    NoteLooperModel looper = _loopers[trackCnt];
+                    if(looper != null && looper.isRecording() && looper.listensTo(channel))
+                    {
+                        armedTracks |= 1L << trackCnt;
+                    }
+                }
+                _armedByChannel[channel] = armedTracks;
+            }
+        }
+
+        public void processInput()
+        {
+            if(_inputDispatcher == null)
+            {
+                return;
+            }
+            if(_routingDirty)
+            {
+                _routingDirty = false;
+                updateRouting();
+            }
+            MidiEventRing inputEvents = _inputDispatcher.getInputEvents();
+            while(inputEvents.poll())
+            {
+                int message = inputEvents.getPolledMessage();
+                int status = MidiEventRing.status(message);
+                if((status & 0xF0) == ShortMessage.CONTROL_CHANGE && MidiEventRing.data1(message) == BANK_SELECT_CONTROLLER)
+                {
+                    _programBank = MidiEventRing.data2(message);
+                    continue;
+                }
+                if((status & 0xF0) == ShortMessage.PROGRAM_CHANGE)
+                {
+                    if(_programBank < _bank.getBanks() && MidiEventRing.data1(message) < _bank.getPatternsPerBank())
+                    {
+                        queuePattern(_bank.getSlot(_programBank, MidiEventRing.data1(message)));
+                    }
+                    continue;
+                }
+                if((status & 0xF0) != ShortMessage.NOTE_ON || MidiEventRing.data2(message) == 0)
+                {
+                    continue;
+                }
+                int note = MidiEventRing.data1(message);
+                TrackModel noteSelectTrack = _noteSelectTrack;
+                if(noteSelectTrack != null)
+                {
+                    noteSelectTrack.setNote(note);
+                }
+                long armedTracks = _armedByChannel[status & 0x0F];
+                if(armedTracks == 0)
+                {
+                    continue;
+                }
+                int stepCount = _stepHistory.nearestStep(inputEvents.getPolledTimeStamp() - _inputLatencyNanos, _stepCount);
+                while(armedTracks != 0)
+                {
+                    int trackIdx = Long.numberOfTrailingZeros(armedTracks);
+                    armedTracks &= armedTracks - 1;
+                    _loopers[trackIdx].recordNote(note, MidiEventRing.data2(message), stepCount);
+                }
+            }
+        }
+
+        public void fillCurrentSteps(int[] currentSteps)
+        {
+            for(int trackCnt = 0; trackCnt < _tracks.length; trackCnt++)
+            {
+                currentSteps[trackCnt] = _tracks[trackCnt].getStepAt(_stepCount);
+            }
+        }
+
+        public boolean allDevicesHaveTimestamps()
+        {
+            for (TrackModel curTrackModel : _tracksModels)
+            {
+                if(!curTrackModel.hasTimestamps())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        public void sendStopped()
+        {
+            _stepCount = 0;
+            _stepHistory.clear();
+            _running = false;
+            _songEntry = NO_PATTERN;
+            _nextResolved = false;
+            if(_queuedPattern != NO_PATTERN)
+            {
+                switchPattern();
+            }
+            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            {
+                _tracksModels.get(trackCnt).sendStopped();
+            }
+        }
+
+        public void sendRecording()
+        {
+            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            {
+                _tracksModels.get(trackCnt).sendRecording();
+            }
+        }
+
+        public void sendPaused()
+        {
+            _running = false;
+            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            {
+                _tracksModels.get(trackCnt).sendPaused();
+            }
+        }
+
+        public void sendPlaying()
+        {
+            _running = true;
+            for(int trackCnt = 0; trackCnt < _tracksModels.size(); trackCnt++)
+            {
+                _tracksModels.get(trackCnt).sendPlaying();
+            }
+        }
+
+        public MidiDevice getMidiInDevice()
+        {
+            return _midiInDevice;
+        }
+    }
+
+    public class TracksScreen implements Screen
+    {
+        private List<ScreenElement> _elements;
+        private SequencerMain _parent;
+        private SequencerBarArea _sequencerBarsArea;
+        private TracksModel _tracksModel;
+        private boolean _clearBackground;
+        private HitGrid<HitTarget> _hitGrid;
+        
+        public TracksScreen(SequencerMain parent, TracksModel tracksModel)
+        {
+            _elements = new ArrayList<>();
+            _parent = parent;
+            this._tracksModel = tracksModel;
+            _clearBackground = true;
+        }
+
+        public SequencerBarArea getSequencerArea()
+        {
+            return this._sequencerBarsArea;
+        }
+
+        @Override
+        public void add(ScreenElement element)
+        {
+            _elements.add(element);
+        }
+
+        @Override
+        public void create()
+        {
+            SequencerBarArea sequencerBarsArea = new SequencerBarArea(_parent, new Rectangle(100, 10, width - 120, height - 100), this._tracksModel);
+            this._sequencerBarsArea = sequencerBarsArea;
+            PlayButton playButton = new PlayButton(_parent, new Rectangle(width/2, height - 90, 80, 50), _playStatus, _inputState);
+            StopButton stopButton = new StopButton(_parent, new Rectangle(width/2 - 90, height - 90, 80, 50), _playStatus, _inputState);
+            StepLengthSelectButton stepLengthSelectButton = new StepLengthSelectButton(_parent, new Rectangle(width/2 + 90, height - 90, 80, 50), _playStatus, _inputState);
+            GateSelectButton gateSelectButton = new GateSelectButton(_parent, new Rectangle(width/2 + 180, height - 90, 80, 50), _playStatus, _inputState);
+            PatternSelectButton patternSelectButton = new PatternSelectButton(_parent, new Rectangle(width/2 + 270, height - 90, 80, 50), _playStatus, _inputState);
+            
+            add(sequencerBarsArea);
+            add(playButton);
+            add(stopButton);
+            add(stepLengthSelectButton);
+            add(gateSelectButton);
+            add(patternSelectButton);
+            if(_config.getStepPages() > 1)
+            {
+                add(new StepPageButton(_parent, new Rectangle(width/2 - 180, height - 90, 80, 50), this));
+            }
+            if(_config.getTrackPages() > 1)
+            {
+                add(new TrackPageButton(_parent, new Rectangle(width/2 - 270, height - 90, 80, 50), this));
+            }
+
+            _hitGrid = new HitGrid<>(width, height, HIT_GRID_CELL_SIZE);
+            registerHitTargets();
+        }
+
+        private void registerHitTargets()
+        {
+            _hitGrid.clear();
+            for (ScreenElement curElem : _elements)
+            {
+                if(curElem instanceof SequencerBarArea)
+                {
+                    ((SequencerBarArea)curElem).registerHitTargets(_hitGrid);
+                }
+                else
+                {
+                    SeqButton curButton = (SeqButton)curElem;
+                    _hitGrid.add(curButton.getArea(), curButton);
+                }
+            }
+        }
+
+        public void showTrackPage(int trackPage)
+        {
+            // the new page's bars take the same slots, a shorter last page leaves some of them empty
+            _sequencerBarsArea.showTrackPage(trackPage);
+            registerHitTargets();
+            clear();
+            setDirty();
+        }
+
+        public void showStepPage(int stepPage)
+        {
+            _sequencerBarsArea.showStepPage(stepPage);
+            clear();
+            setDirty();
+        }
+
+        @Override
+        public void draw()
+        {
+            if(_clearBackground)
+            {
+                getRenderer().background(255);
+                _clearBackground = false;
+            }
+            for (ScreenElement curElem : _elements)
+            {
+                curElem.draw();
+            }
+        }
+
+        @Override
+        public void mousePressed(MouseEvent event, InputState inputState)
+        {
+            HitTarget target = _hitGrid.find(event.getX(), event.getY());
+            if(target != null)
+            {
+                target.mousePressed(event, inputState);
+            }
+        }
+
+        @Override
+        public void setDirty()
+        {
+            for (ScreenElement curElem : _elements)
+            {
+                curElem.setDirty();
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            _clearBackground = true;
+        }
+    }
+    
+    public class InstrumentSelectScreen implements Screen
+    {
+        private List<MidiDevice> _devices;
+        private List<ScreenElement> _elements;
+        private SequencerMain _mainApp;
+        private TrackModel _instrumentSelectingTrack;
+        private InputState _inputState;
+        private boolean _clearBackground;
+        private boolean _isDirty;
+        private TrackSnapshot _drawnSnapshot;
+        private HitGrid<HitTarget> _hitGrid;
+
+        public InstrumentSelectScreen(SequencerMain sequencerMain, InputState inputState, List<MidiDevice> outDevices)
+        {
+            _mainApp = sequencerMain;
+            _devices = outDevices;
+            _elements = new ArrayList<>();
+            _clearBackground = true;
+        }
+        
+        public void setSelectingTrack(TrackModel intstrumentSelectingTrack)
+        {
+            _instrumentSelectingTrack = intstrumentSelectingTrack;
+            _instrumentSelectingTrack.openMidiInDevice();
+        }
+
+        @Override
+        public void create()
+        {
+            int xDevicePos = 20;
+            int yDevicePos = 20;
+            for (MidiDevice curDev : _devices)
+            {
+                _elements.add(new DeviceButton(_mainApp, xDevicePos, yDevicePos, curDev, _playStatus, _inputState, _instrumentSelectingTrack));
+                yDevicePos = yDevicePos  + 30;
+            }
+            int xChannelPos = 500;
+            int yChannelPos = 20;
+            for(int channelNr = 0; channelNr < 16; channelNr++)
+            {
+                _elements.add(new ChannelSelectButton(_mainApp, xChannelPos, yChannelPos, channelNr, _playStatus, _inputState, _instrumentSelectingTrack));
+                yChannelPos = yChannelPos + 30;
+            }
+                
+            int xNotePos = 600;
+            int yNotePos = 20;
+            _elements.add(new MidiReceiveLabel(_mainApp, xNotePos, yNotePos, _instrumentSelectingTrack));
+            
+            int xStartPos = 600;
+            int yStartPos = 60;
+            createPresetNoteSelectButtons(_mainApp, xStartPos, yStartPos, _instrumentSelectingTrack);
+
+            _hitGrid = new HitGrid<>(width, height, HIT_GRID_CELL_SIZE);
+            for (ScreenElement curElem : _elements)
+            {
+                SeqButton curButton = (SeqButton)curElem;
+                _hitGrid.add(curButton.getArea(), curButton);
+            }
+        }
+
+        private void createPresetNoteSelectButtons(SequencerMain mainApp, int xStartPos, int yStartPos, TrackModel instrumentSelectingTrack)
+        {
+            Map<Integer, String> noteInstrumentMapping = new HashMap<>();
+            noteInstrumentMapping.put(36, "Kick");
+            noteInstrumentMapping.put(38, "Snare");
+            noteInstrumentMapping.put(50, "Lo Tom");
+            noteInstrumentMapping.put(42, "Hi Tom");
+            noteInstrumentMapping.put(42, "Cl Hat");
+            noteInstrumentMapping.put(46, "Op Hat");
+            noteInstrumentMapping.put(39, "Clap");
+            noteInstrumentMapping.put(75, "Claves");
+            noteInstrumentMapping.put(67, "Agogo");
+            noteInstrumentMapping.put(49, "Crash");
+            
+            int xPos = xStartPos;
+            int yPos = yStartPos;
+            Set<Integer> noteSet = noteInstrumentMapping.keySet();
+            for (Integer curNote : noteSet)
+            {
+                _elements.add(new NoteSelectButton(mainApp, xPos, yPos, curNote, noteInstrumentMapping.get(curNote), _instrumentSelectingTrack));
+                yPos += 30;
+            }
+        }
+
+        @Override
+        public void add(ScreenElement element)
+        {
+            _elements.add(element);
+        }
+
+        @Override
+        public void mousePressed(MouseEvent event, InputState inputState)
+        {
+            HitTarget target = _hitGrid.find(event.getX(), event.getY());
+            if(target != null)
+            {
+                target.mousePressed(event, inputState);
+            }
+        }
+
+        @Override
+        public void draw()
+        {
+            if(_clearBackground)
+            {
+                getRenderer().background(255);
+                _clearBackground = false;
+            }
+            if(_instrumentSelectingTrack != null && _instrumentSelectingTrack.getSnapshot() != _drawnSnapshot)
+            {
+                _drawnSnapshot = _instrumentSelectingTrack.getSnapshot();
+                setDirty();
+            }
+            if(_isDirty)
+            {
+                for (ScreenElement curElem : _elements)
+                {
+                    if(curElem instanceof InstrumentSelectButton)
+                    {
+                        InstrumentSelectButton curButton = (InstrumentSelectButton)curElem;
+                        curButton.setActiveTrack(_instrumentSelectingTrack);
+                    }
+                    curElem.draw();
+                }
+                _isDirty = false;
+            }
+        }
+
+        @Override
+        public void setDirty()
+        {
+            _isDirty = true;
+            for (ScreenElement curElem : _elements)
+            {
+                curElem.setDirty();
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            _clearBackground = true;
+        }
+    }
+
+    public class PatternSelectScreen implements Screen
+    {
+        private List<ScreenElement> _elements;
+        private SequencerMain _mainApp;
+        private TracksModel _tracksModel;
+        private int _shownBank;
+        private boolean _clearBackground;
+        private boolean _isDirty;
+        private int _drawnBank;
+        private int _drawnActivePattern;
+        private int _drawnQueuedPattern;
+        private boolean _drawnSongMode;
+        private int _drawnSongEntry;
+        private HitGrid<HitTarget> _hitGrid;
+        private Arrangement _song;
+        private boolean _chaining;
+
+        public PatternSelectScreen(SequencerMain mainApp, TracksModel tracksModel)
+        {
+            _mainApp = mainApp;
+            _tracksModel = tracksModel;
+            _elements = new ArrayList<>();
+            _song = new Arrangement();
+            _chaining = false;
+            _shownBank = 0;
+            _clearBackground = true;
+            _isDirty = true;
+        }
+
+        @Override
+        public void create()
+        {
+            PatternBank bank = _tracksModel.getBank();
+            int yBankPos = 20;
+            for(int bankIdx = 0; bankIdx < bank.getBanks(); bankIdx++)
+            {
+                _elements.add(new BankButton(_mainApp, new Rectangle(20, yBankPos, 60, 22), bankIdx, this));
+                yBankPos = yBankPos + 26;
+            }
+            // patterns of the shown bank in rows of eight
+            for(int patternIdx = 0; patternIdx < bank.getPatternsPerBank(); patternIdx++)
+            {
+                Rectangle area = new Rectangle(120 + (patternIdx % 8) * 70, 20 + (patternIdx / 8) * 40, 60, 32);
+                _elements.add(new PatternButton(_mainApp, area, patternIdx, this));
+            }
+            _elements.add(new ChainButton(_mainApp, new Rectangle(120, height - 90, 80, 50), this));
+            _elements.add(new ClearSongButton(_mainApp, new Rectangle(210, height - 90, 80, 50), this));
+            _elements.add(new SongModeButton(_mainApp, new Rectangle(300, height - 90, 80, 50), this));
+            _elements.add(new SaveProjectButton(_mainApp, new Rectangle(390, height - 90, 80, 50), _tracksModel));
+            _elements.add(new ExportMidiButton(_mainApp, new Rectangle(480, height - 90, 80, 50), _tracksModel));
+            _elements.add(new ImportMidiButton(_mainApp, new Rectangle(570, height - 90, 80, 50), this));
+
+            _hitGrid = new HitGrid<>(width, height, HIT_GRID_CELL_SIZE);
+            for (ScreenElement curElem : _elements)
+            {
+                SeqButton curButton = (SeqButton)curElem;
+                _hitGrid.add(curButton.getArea(), curButton);
+            }
+        }
+
+        public int getShownBank()
+        {
+            return _shownBank;
+        }
+
+        public void showBank(int bankIdx)
+        {
+            _shownBank = bankIdx;
+        }
+
+        public TracksModel getTracksModel()
+        {
+            return _tracksModel;
+        }
+
+        public boolean isChaining()
+        {
+            return _chaining;
+        }
+
+        public void setChaining(boolean chaining)
+        {
+            _chaining = chaining;
+            setDirty();
+        }
+
+        // pressing the last chained pattern again plays it one bar longer
+        public void chainPattern(int slot)
+        {
+            int lastEntry = _song.size() - 1;
+            if(lastEntry >= 0 && _song.getSlot(lastEntry) == slot)
+            {
+                _song.setRepeats(lastEntry, _song.getRepeats(lastEntry) + 1);
+            }
+            else
+            {
+                _song.add(slot, 1, getMuteMask(), Arrangement.KEEP_TEMPO);
+            }
+            _tracksModel.submit(new PatternEdit(_song.copy()));
+            setDirty();
+        }
+
+        public void clearSong()
+        {
+            _song.clear();
+            _tracksModel.submit(new PatternEdit(_song.copy()));
+            setDirty();
+        }
+
+        private long getMuteMask()
+        {
+            long muteMask = 0;
+            List<TrackModel> trackModels = _tracksModel.getTrackModels();
+            for(int trackCnt = 0; trackCnt < trackModels.size(); trackCnt++)
+            {
+                if(trackModels.get(trackCnt).getSnapshot().isMuted())
+                {
+                    muteMask |= 1L << trackCnt;
+                }
+            }
+            return muteMask;
+        }
+
+        private void drawSong()
+        {
+            Renderer renderer = getRenderer();
+            renderer.noStroke();
+            renderer.fill(255);
+            renderer.rect(120, height - 130, width - 140, 30);
+            renderer.textFont(_instrumentSelectFont);
+            renderer.textAlign(LEFT);
+            renderer.fill(0);
+            String playing = _tracksModel.getSongEntry() == NO_PATTERN ? "" : " (entry " + (_tracksModel.getSongEntry() + 1) + ")";
+            renderer.text("Song" + playing + ": " + _song, 120, height - 110);
+            renderer.stroke(0);
+        }
+
+        @Override
+        public void add(ScreenElement element)
+        {
+            _elements.add(element);
+        }
+
+        @Override
+        public void mousePressed(MouseEvent event, InputState inputState)
+        {
+            HitTarget target = _hitGrid.find(event.getX(), event.getY());
+            if(target != null)
+            {
+                target.mousePressed(event, inputState);
+            }
+        }
+
+        @Override
+        public void draw()
+        {
+            if(_clearBackground)
+            {
+                getRenderer().background(255);
+                _clearBackground = false;
+            }
+            if(_drawnBank != _shownBank || _drawnActivePattern != _tracksModel.getActivePattern() || _drawnQueuedPattern != _tracksModel.getQueuedPattern())
+            {
+                _drawnBank = _shownBank;
+                _drawnActivePattern = _tracksModel.getActivePattern();
+                _drawnQueuedPattern = _tracksModel.getQueuedPattern();
+                setDirty();
+            }
+            if(_drawnSongMode != _tracksModel.isSongMode() || _drawnSongEntry != _tracksModel.getSongEntry())
+            {
+                _drawnSongMode = _tracksModel.isSongMode();
+                _drawnSongEntry = _tracksModel.getSongEntry();
+                setDirty();
+            }
+            if(_isDirty)
+            {
+                for (ScreenElement curElem : _elements)
+                {
+                    curElem.draw();
+                }
+                drawSong();
+                _isDirty = false;
+            }
+        }
+
+        @Override
+        public void setDirty()
+        {
+            _isDirty = true;
+            for (ScreenElement curElem : _elements)
+            {
+                curElem.setDirty();
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            _clearBackground = true;
+        }
+    }
+
+    public class BankButton extends SeqButton
+    {
+        private int _bankIdx;
+        private PatternSelectScreen _screen;
+
+        public BankButton(SequencerMain mainApp, Rectangle area, int bankIdx, PatternSelectScreen screen)
+        {
+            super(mainApp, area, null, null);
+            _bankIdx = bankIdx;
+            _screen = screen;
+        }
+
+        @Override
+        protected void buttonPressed(InputState inputState)
+        {
+            _screen.showBank(_bankIdx);
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _screen.getShownBank() == _bankIdx ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            if(_screen.getShownBank() == _bankIdx)
+            {
+                target.fill(255, 192, 64);
+            }
+            else
+            {
+                target.fill(160, 96, 32);
+            }
+        }
+
+        @Override
+        protected void buttonSpecificDraw(Renderer target)
+        {
+            target.textFont(_instrumentSelectFont);
+            target.textAlign(LEFT);
+            target.fill(0);
+            target.text("Bank " + (_bankIdx + 1), _area.x + 6, _area.y + 16);
+        }
+    }
+
+    public class PatternButton extends SeqButton
+    {
+        private int _patternIdx;
+        private PatternSelectScreen _screen;
+
+        public PatternButton(SequencerMain mainApp, Rectangle area, int patternIdx, PatternSelectScreen screen)
+        {
+            super(mainApp, area, null, null);
+            _patternIdx = patternIdx;
+            _screen = screen;
+        }
+
+        private int getSlot()
+        {
+            return _screen.getTracksModel().getBank().getSlot(_screen.getShownBank(), _patternIdx);
+        }
+
+        @Override
+        protected void buttonPressed(InputState inputState)
+        {
+            if(_screen.isChaining())
+            {
+                _screen.chainPattern(getSlot());
+                return;
+            }
+            _screen.getTracksModel().submit(new PatternEdit(EditType.SELECT_PATTERN, -1, 0, getSlot()));
+            inputState.patternSelected();
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            int slot = getSlot();
+            if(slot == _screen.getTracksModel().getQueuedPattern())
+            {
+                return 2;
+            }
+            return slot == _screen.getTracksModel().getActivePattern() ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            switch (getLayerState())
+            {
+                case 2:
+                    target.fill(255, 255, 64);
+                    break;
+                case 1:
+                    target.fill(64, 255, 64);
+                    break;
+                default:
+                    target.fill(96, 160, 96);
+                    break;
+            }
+        }
+
+        @Override
+        protected void buttonSpecificDraw(Renderer target)
+        {
+            target.textFont(_instrumentSelectFont);
+            target.textAlign(LEFT);
+            target.fill(0);
+            target.text(Integer.toString(_patternIdx + 1), _area.x + 10, _area.y + 20);
+        }
+    }
+
+    public class ChainButton extends SeqButton
+    {
+        private PatternSelectScreen _screen;
+
+        public ChainButton(SequencerMain mainApp, Rectangle area, PatternSelectScreen screen)
+        {
+            super(mainApp, area, null, null);
+            _screen = screen;
+        }
+
+        @Override
+        protected void buttonPressed(InputState inputState)
+        {
+            _screen.setChaining(!_screen.isChaining());
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _screen.isChaining() ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            if(_screen.isChaining())
+            {
+                target.fill(255, 128, 0);
+            }
+            else
+            {
+                target.fill(128, 64, 0);
+            }
         }
+    }
 
-        public SequencerBarArea getSequencerArea()
+    public class ClearSongButton extends SeqButton
+    {
+        private PatternSelectScreen _screen;
+
+        public ClearSongButton(SequencerMain mainApp, Rectangle area, PatternSelectScreen screen)
         {
-            return this._sequencerBarsArea;
+            super(mainApp, area, null, null);
+            _screen = screen;
         }
 
         @Override
-        public void add(ScreenElement element)
+        protected void buttonPressed(InputState inputState)
         {
-            _elements.add(element);
+            _screen.clearSong();
         }
 
         @Override
-        public void create()
+        protected void setColor(Renderer target)
         {
-            SequencerBarArea sequencerBarsArea = new SequencerBarArea(_parent, new Rectangle(100, 10, width - 120, height - 100), this._tracksModel);
-            this._sequencerBarsArea = sequencerBarsArea;
-            PlayButton playButton = new PlayButton(_parent, new Rectangle(width/2, height - 90, 80, 50), _playStatus, _inputState);
-            StopButton stopButton = new StopButton(_parent, new Rectangle(width/2 - 90, height - 90, 80, 50), _playStatus, _inputState);
-            StepLengthSelectButton stepLengthSelectButton = new StepLengthSelectButton(_parent, new Rectangle(width/2 + 90, height - 90, 80, 50), _playStatus, _inputState);
-            
-            add(sequencerBarsArea);
-            add(playButton);
-            add(stopButton);
-            add(stepLengthSelectButton);
+            target.fill(32, 32, 32);
+        }
+    }
+
+    public class SongModeButton extends SeqButton
+    {
+        private PatternSelectScreen _screen;
+
+        public SongModeButton(SequencerMain mainApp, Rectangle area, PatternSelectScreen screen)
+        {
+            super(mainApp, area, null, null);
+            _screen = screen;
         }
 
         @Override
-        public void draw()
+        protected void buttonPressed(InputState inputState)
         {
-            if(_clearBackground)
-            {
-                background(255);
-                _clearBackground = false;
-            }
-            for (ScreenElement curElem : _elements)
-            {
-                curElem.draw();
-            }
+            TracksModel tracksModel = _screen.getTracksModel();
+            tracksModel.submit(new PatternEdit(EditType.SET_SONG_MODE, -1, 0, tracksModel.isSongMode() ? 0 : 1));
         }
 
         @Override
-        public void mousePressed(MouseEvent event, InputState inputState)
+        protected int getLayerState()
         {
-            for (ScreenElement curElem : _elements)
-            {
-                curElem.mousePressed(event, inputState);
-            }
+            return _screen.getTracksModel().isSongMode() ? 1 : 0;
         }
 
         @Override
-        public void setDirty()
+        protected void setColor(Renderer target)
         {
-            for (ScreenElement curElem : _elements)
+            if(_screen.getTracksModel().isSongMode())
             {
-                curElem.setDirty();
+                target.fill(64, 255, 64);
+            }
+            else
+            {
+                target.fill(16, 96, 16);
             }
         }
 
         @Override
-        public void clear()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            _clearBackground = true;
+            // a small arrow chain as the song symbol
+            int centerY = _area.y + _area.height / 2;
+            target.line(_area.x + 15, centerY, _area.x + _area.width - 15, centerY);
+            target.line(_area.x + _area.width - 25, centerY - 8, _area.x + _area.width - 15, centerY);
+            target.line(_area.x + _area.width - 25, centerY + 8, _area.x + _area.width - 15, centerY);
         }
     }
-    
-    public class NoteSelectMidiReceiver implements Receiver
+
+    public class SaveProjectButton extends SeqButton
     {
-        private TrackModel _instrumentSelectingTrack;
+        private TracksModel _tracksModel;
+
+        public SaveProjectButton(SequencerMain mainApp, Rectangle area, TracksModel tracksModel)
+        {
+            super(mainApp, area, null, null);
+            _tracksModel = tracksModel;
+        }
 
         @Override
-        public void send(MidiMessage message, long timeStamp)
+        protected void buttonPressed(InputState inputState)
         {
-            if(message instanceof ShortMessage)
-            {
-                ShortMessage sMessage = (ShortMessage)message;
-                System.out.println("timestamp: " + timeStamp + " Message: " + midiMessageToString(sMessage));
-                _instrumentSelectingTrack.setNote(sMessage.getData1());
-            }
+            _tracksModel.submit(new PatternEdit(EditType.SAVE_PROJECT, -1, 0, 0));
         }
 
         @Override
-        public void close()
+        protected void setColor(Renderer target)
         {
+            target.fill(32, 64, 160);
         }
 
-        public void setInstrumentSelectingTrack(TrackModel intstrumentSelectingTrack)
+        @Override
+        protected void buttonSpecificDraw(Renderer target)
         {
-            _instrumentSelectingTrack = intstrumentSelectingTrack;
+            // a floppy: the body and its shutter
+            target.fill(255);
+            target.rect(_area.x + 28, _area.y + 12, 24, 26);
+            target.fill(32, 64, 160);
+            target.rect(_area.x + 33, _area.y + 12, 14, 9);
         }
     }
 
-    public class InstrumentSelectScreen implements Screen
+    public class ExportMidiButton extends SeqButton
     {
-        private List<MidiDevice> _devices;
-        private List<ScreenElement> _elements;
-        private SequencerMain _mainApp;
-        private TrackModel _instrumentSelectingTrack;
-        private InputState _inputState;
-        private boolean _clearBackground;
-        private boolean _isDirty;
+        private TracksModel _tracksModel;
 
-        public InstrumentSelectScreen(SequencerMain sequencerMain, InputState inputState, List<MidiDevice> outDevices)
-        {
-            _mainApp = sequencerMain;
-            _devices = outDevices;
-            _elements = new ArrayList<>();
-            _clearBackground = true;
-        }
-        
-        public void setSelectingTrack(TrackModel intstrumentSelectingTrack)
+        public ExportMidiButton(SequencerMain mainApp, Rectangle area, TracksModel tracksModel)
         {
-            _instrumentSelectingTrack = intstrumentSelectingTrack;
-            _instrumentSelectingTrack.openMidiInDevice();
+            super(mainApp, area, null, null);
+            _tracksModel = tracksModel;
         }
 
         @Override
-        public void create()
+        protected void buttonPressed(InputState inputState)
         {
-            int xDevicePos = 20;
-            int yDevicePos = 20;
-            for (MidiDevice curDev : _devices)
-            {
-                _elements.add(new DeviceButton(_mainApp, xDevicePos, yDevicePos, curDev, _playStatus, _inputState, _instrumentSelectingTrack));
-                yDevicePos = yDevicePos  + 30;
-            }
-            int xChannelPos = 500;
-            int yChannelPos = 20;
-            for(int channelNr = 0; channelNr < 16; channelNr++)
-            {
-                _elements.add(new ChannelSelectButton(_mainApp, xChannelPos, yChannelPos, channelNr, _playStatus, _inputState, _instrumentSelectingTrack));
-                yChannelPos = yChannelPos + 30;
-            }
-                
-            int xNotePos = 600;
-            int yNotePos = 20;
-            _elements.add(new MidiReceiveLabel(_mainApp, xNotePos, yNotePos, _instrumentSelectingTrack));
-            
-            int xStartPos = 600;
-            int yStartPos = 60;
-            createPresetNoteSelectButtons(_mainApp, xStartPos, yStartPos, _instrumentSelectingTrack);
+            _tracksModel.submit(new PatternEdit(EditType.EXPORT_MIDI, -1, 0, 0));
         }
 
-        private void createPresetNoteSelectButtons(SequencerMain mainApp, int xStartPos, int yStartPos, TrackModel instrumentSelectingTrack)
+        @Override
+        protected void setColor(Renderer target)
         {
-            Map<Integer, String> noteInstrumentMapping = new HashMap<>();
-            noteInstrumentMapping.put(36, "Kick");
-            noteInstrumentMapping.put(38, "Snare");
-            noteInstrumentMapping.put(50, "Lo Tom");
-            noteInstrumentMapping.put(42, "Hi Tom");
-            noteInstrumentMapping.put(42, "Cl Hat");
-            noteInstrumentMapping.put(46, "Op Hat");
-            noteInstrumentMapping.put(39, "Clap");
-            noteInstrumentMapping.put(75, "Claves");
-            noteInstrumentMapping.put(67, "Agogo");
-            noteInstrumentMapping.put(49, "Crash");
-            
-            int xPos = xStartPos;
-            int yPos = yStartPos;
-            Set<Integer> noteSet = noteInstrumentMapping.keySet();
-            for (Integer curNote : noteSet)
-            {
-                _elements.add(new NoteSelectButton(mainApp, xPos, yPos, curNote, noteInstrumentMapping.get(curNote), _instrumentSelectingTrack));
-                yPos += 30;
-            }
+            target.fill(160, 96, 32);
         }
 
         @Override
-        public void add(ScreenElement element)
+        protected void buttonSpecificDraw(Renderer target)
         {
-            _elements.add(element);
+            // an arrow pointing out of the box
+            int centerY = _area.y + _area.height / 2;
+            target.line(_area.x + 25, centerY, _area.x + _area.width - 25, centerY);
+            target.line(_area.x + _area.width - 35, centerY - 8, _area.x + _area.width - 25, centerY);
+            target.line(_area.x + _area.width - 35, centerY + 8, _area.x + _area.width - 25, centerY);
         }
+    }
 
-        @Override
-        public void mousePressed(MouseEvent event, InputState inputState)
+    public class ImportMidiButton extends SeqButton
+    {
+        private PatternSelectScreen _screen;
+
+        public ImportMidiButton(SequencerMain mainApp, Rectangle area, PatternSelectScreen screen)
         {
-            for (ScreenElement curElem : _elements)
-            {
-                curElem.mousePressed(event, inputState);
-            }
+            super(mainApp, area, null, null);
+            _screen = screen;
         }
 
+        // lands in the pattern that is playing, pick the slot first
         @Override
-        public void draw()
+        protected void buttonPressed(InputState inputState)
         {
-            if(_clearBackground)
-            {
-                background(255);
-                _clearBackground = false;
-            }
-            if(_isDirty)
-            {
-                for (ScreenElement curElem : _elements)
-                {
-                    if(curElem instanceof InstrumentSelectButton)
-                    {
-                        InstrumentSelectButton curButton = (InstrumentSelectButton)curElem;
-                        curButton.setActiveTrack(_instrumentSelectingTrack);
-                    }
-                    curElem.draw();
-                }
-                _isDirty = false;
-            }
+            importMidi(_screen.getTracksModel().getActivePattern());
         }
 
         @Override
-        public void setDirty()
+        protected void setColor(Renderer target)
         {
-            _isDirty = true;
-            for (ScreenElement curElem : _elements)
-            {
-                curElem.setDirty();
-            }
+            target.fill(160, 96, 32);
         }
 
         @Override
-        public void clear()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            _clearBackground = true;
+            // an arrow pointing into the box
+            int centerY = _area.y + _area.height / 2;
+            target.line(_area.x + 25, centerY, _area.x + _area.width - 25, centerY);
+            target.line(_area.x + 35, centerY - 8, _area.x + 25, centerY);
+            target.line(_area.x + 35, centerY + 8, _area.x + 25, centerY);
         }
     }
 
@@ -1308,33 +3259,33 @@ public class SequencerMain extends PApplet
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            _trackModel.setDevice(_device);
+            _trackModel.submitDevice(_device);
             inputState.instrumentSelected();
         }
 
         @Override
-        protected void setColor()
+        protected int getLayerState()
+        {
+            return _trackModel.getSnapshot().getDeviceInfo() == _deviceInfo ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
         {
-            if(_trackModel.getDeviceInfo() == _device)
+            if(_trackModel.getSnapshot().getDeviceInfo() == _deviceInfo)
             {
-                _mainApp.fill(64, 255, 255);
+                target.fill(64, 255, 255);
             }
             else
             {
-                _mainApp.fill(0, 128, 128);
+                target.fill(0, 128, 128);
             }
         }
 
         @Override
-        public void draw()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            super.draw();
-            textFont(_instrumentSelectFont);
-            textAlign(LEFT);
-            int previousColor = getGraphics().fillColor;
-            fill(0);
-            text("N: " + _deviceInfo.getName() + " D: " + _deviceInfo.getDescription(), _area.x + 10, _area.y + 18);
-            fill(previousColor);
+            drawLabel(target, "N: " + _deviceInfo.getName() + " D: " + _deviceInfo.getDescription());
         }
     }
     
@@ -1351,31 +3302,32 @@ public class SequencerMain extends PApplet
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            _trackModel.setChannel(_channelNr);
+            _trackModel.submit(EditType.SET_CHANNEL, 0, _channelNr);
             inputState.instrumentSelected();
         }
 
         @Override
-        public void draw()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            super.draw();
-            textFont(_instrumentSelectFont);
-            textAlign(LEFT);
-            int previousColor = getGraphics().fillColor;
-            fill(0);
-            text(_channelNr, _area.x + 10, _area.y + 18);
-            fill(previousColor);
+            drawLabel(target, Integer.toString(_channelNr));
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _trackModel.getSnapshot().getChannel() == _channelNr ? 1 : 0;
         }
+
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            if(_trackModel.getChannel() == _channelNr)
+            if(_trackModel.getSnapshot().getChannel() == _channelNr)
             {
-                _mainApp.fill(128, 128, 255);
+                target.fill(128, 128, 255);
             }
             else
             {
-                _mainApp.fill(64, 64, 255);
+                target.fill(64, 64, 255);
             }
         }
     }
@@ -1388,15 +3340,15 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        public void draw()
+        protected int getLayerState()
         {
-            super.draw();
-            textFont(_instrumentSelectFont);
-            textAlign(LEFT);
-            int previousColor = getGraphics().fillColor;
-            fill(0);
-            text(_trackModel.getNote(), _area.x + 10, _area.y + 18);
-            fill(previousColor);
+            return _trackModel.getSnapshot().getNote();
+        }
+
+        @Override
+        protected void buttonSpecificDraw(Renderer target)
+        {
+            drawLabel(target, Integer.toString(_trackModel.getSnapshot().getNote()));
         }
 
         @Override
@@ -1406,9 +3358,9 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            fill(255, 128, 255);
+            target.fill(255, 128, 255);
         }
     }
 
@@ -1427,54 +3379,47 @@ public class SequencerMain extends PApplet
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            _trackModel.setNote(_note);
+            _trackModel.submit(EditType.SET_NOTE, 0, _note);
             inputState.instrumentSelected();
         }
 
         @Override
-        public void draw()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            super.draw();
-            textFont(_instrumentSelectFont);
-            textAlign(LEFT);
-            int previousColor = getGraphics().fillColor;
-            fill(0);
-            text(_note + ": " + _instrumentName, _area.x + 10, _area.y + 18);
-            fill(previousColor);
+            drawLabel(target, _note + ": " + _instrumentName);
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            fill(0, 128, 255);
+            target.fill(0, 128, 255);
         }
     }
     
-    public class LooperReceiver implements Receiver
+    public class MidiInputDispatcher implements Receiver
     {
-        private NoteLooperModel _looperModel;
+        private MidiEventRing _inputEvents;
+        private DeviceTimeBase _inTimeBase;
+
+        public MidiInputDispatcher(MidiDevice midiInDevice)
+        {
+            _inputEvents = new MidiEventRing(INPUT_RING_CAPACITY);
+            _inTimeBase = new DeviceTimeBase(midiInDevice);
+        }
 
-        public LooperReceiver(NoteLooperModel noteLooperModel)
+        public MidiEventRing getInputEvents()
         {
-            _looperModel = noteLooperModel;
+            return _inputEvents;
         }
 
+        // runs on the provider's thread: only hand the event over, the sequencer thread routes it
         @Override
         public void send(MidiMessage message, long timeStamp)
         {
-            if(_looperModel.isRecording() && (message instanceof ShortMessage))
+            if(message instanceof ShortMessage)
             {
                 ShortMessage sMessage = (ShortMessage)message;
-                System.out.print("Got message: " + midiMessageToString(sMessage));
-                if(sMessage.getData2() != 0)
-                {
-                    System.out.println("recording it!");
-                    _looperModel.recordNote(message);
-                }
-                else
-                {
-                    System.out.println("");
-                }
+                _inputEvents.offer(MidiEventRing.encode(sMessage.getStatus(), sMessage.getData1(), sMessage.getData2()), _inTimeBase.toNanoTime(timeStamp));
             }
         }
 
@@ -1497,19 +3442,25 @@ public class SequencerMain extends PApplet
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            _trackModel.setArpeggiator(!_trackModel.isArpeggiatorOn());
+            _trackModel.submit(EditType.SET_ARPEGGIATOR, 0, _trackModel.getSnapshot().isArpeggiatorOn() ? 0 : 1);
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _trackModel.getSnapshot().isArpeggiatorOn() ? 1 : 0;
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            if(_trackModel.isArpeggiatorOn())
+            if(_trackModel.getSnapshot().isArpeggiatorOn())
             {
-                _mainApp.fill(255, 0, 0);
+                target.fill(255, 0, 0);
             }
             else
             {
-                _mainApp.fill(0, 255, 0);
+                target.fill(0, 255, 0);
             }
         }
     }
@@ -1527,46 +3478,33 @@ public class SequencerMain extends PApplet
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            if(!_trackModel.isRecording())
-            {
-                _trackModel.sendRecording();
-            }
-            else
-            {
-                _trackModel.sendStopRecording();
-            }
+            _trackModel.submit(EditType.SET_RECORDING, 0, _trackModel.getSnapshot().isRecording() ? 0 : 1);
         }
 
         @Override
-        protected void buttonSpecificDraw()
+        protected void buttonSpecificDraw(Renderer target)
         {
-            int prevCol = _mainApp.getGraphics().fillColor;
-            boolean prevStroke = _mainApp.getGraphics().stroke;
-            int prevStrokeCol = _mainApp.getGraphics().strokeColor;
-            _mainApp.noStroke();
-            _mainApp.fill(0, 0, 0);
-            _mainApp.ellipse(_area.x + ((int)_area.width/2) + 1, _area.y + ((int)_area.height/2)  + 1, _area.width/3 - 1, _area.height/3);
-            _mainApp.fill(prevCol);
-            if(prevStroke)
-            {
-                _mainApp.stroke(prevStrokeCol);
-            }
-            else
-            {
-                _mainApp.noStroke();
-            }
+            target.noStroke();
+            target.fill(0, 0, 0);
+            target.ellipse(_area.x + ((int)_area.width/2) + 1, _area.y + ((int)_area.height/2)  + 1, _area.width/3 - 1, _area.height/3);
+        }
+
+        @Override
+        protected int getLayerState()
+        {
+            return _trackModel.getSnapshot().isRecording() ? 1 : 0;
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            if(_trackModel.isRecording())
+            if(_trackModel.getSnapshot().isRecording())
             {
-                _mainApp.fill(255, 10, 10);
+                target.fill(255, 10, 10);
             }
             else
             {
-                _mainApp.fill(200, 10, 10);
+                target.fill(200, 10, 10);
             }
         }
     }
@@ -1593,17 +3531,17 @@ public class SequencerMain extends PApplet
         }
 
         @Override
-        public void mousePressed(MouseEvent event, InputState inputState)
+        public void registerHitTargets(HitGrid<HitTarget> hitGrid)
         {
-            super.mousePressed(event, inputState);
-            _recordButton.mousePressed(event, inputState);
-            _arpeggiatorButton.mousePressed(event, inputState);
+            super.registerHitTargets(hitGrid);
+            hitGrid.add(_recordButton.getArea(), _recordButton);
+            hitGrid.add(_arpeggiatorButton.getArea(), _arpeggiatorButton);
         }
 
         @Override
-        public void setDirty()
+        protected void setControlsDirty()
         {
-            super.setDirty();
+            super.setControlsDirty();
             _recordButton.setDirty();
             _arpeggiatorButton.setDirty();
         }
@@ -1612,25 +3550,43 @@ public class SequencerMain extends PApplet
     public class NoteLooperModel extends TrackModel
     {
         private PlayStatusType _loopingState;
+        private int _inputChannel;
 
-        public NoteLooperModel(int steps, int stepsPerBeat, MidiDevice midiInDevice, Queue<MidiNoteInfo> noteStack)
+        public NoteLooperModel(int steps, int stepsPerBeat, MidiDevice midiInDevice, NoteOffWheel noteOffs)
         {
-            super(steps, stepsPerBeat, midiInDevice, noteStack);
+            super(steps, stepsPerBeat, midiInDevice, noteOffs);
             _loopingState = PlayStatusType.STOPPED;
-            try
-            {
-                if(!midiInDevice.isOpen())
-                {
-                    midiInDevice.open();
-                }
-                Transmitter recordingTransmitter = midiInDevice.getTransmitter();
-                Receiver loopReceiver = new LooperReceiver(this);
-                recordingTransmitter.setReceiver(loopReceiver);
-            }
-            catch (MidiUnavailableException exc)
+            _inputChannel = OMNI_CHANNEL;
+        }
+
+        public int getInputChannel()
+        {
+            return _inputChannel;
+        }
+
+        public void setInputChannel(int inputChannel)
+        {
+            _inputChannel = inputChannel;
+            routingChanged();
+        }
+
+        public boolean listensTo(int channel)
+        {
+            return _inputChannel == OMNI_CHANNEL || _inputChannel == channel;
+        }
+
+        private void setLoopingState(PlayStatusType loopingState)
+        {
+            _loopingState = loopingState;
+            routingChanged();
+            markChanged();
+        }
+
+        private void routingChanged()
+        {
+            if(_tracksModel != null)
             {
-                System.out.println("For this Midi Device:" + midiInDevice.getDeviceInfo().getName());
-                exc.printStackTrace();
+                _tracksModel.routingChanged();
             }
         }
 
@@ -1640,12 +3596,15 @@ public class SequencerMain extends PApplet
             //we don't react to a note change because we record notes by keyboard
         }
 
-        public void recordNote(MidiMessage message)
+        public void recordNote(int note, int velocity, int stepCount)
         {
-            int note = ((ShortMessage)message).getData1();
-            _activeSteps.get(_currentStep).add(note);
+            int stepIdx = getStepAt(stepCount);
+            writablePattern().addNote(stepIdx, note, velocity);
+            journal(Journal.ADD_NOTE, stepIdx, note << 8 | velocity);
+            markChanged();
         }
 
+        @Override
         public boolean isRecording()
         {
             return _loopingState == PlayStatusType.RECORDING;
@@ -1662,27 +3621,27 @@ public class SequencerMain extends PApplet
                 default:
                     break;
             }
-            _loopingState = PlayStatusType.STOPPED;
+            setLoopingState(PlayStatusType.STOPPED);
             super.sendStopped();
         }
 
         @Override
         public void sendRecording()
         {
-            _loopingState = PlayStatusType.RECORDING;
+            setLoopingState(PlayStatusType.RECORDING);
         }
 
         @Override
         public void sendStopRecording()
         {
-            _loopingState = PlayStatusType.PLAYING;
+            setLoopingState(PlayStatusType.PLAYING);
             super.sendStopRecording();
         }
 
         @Override
         public void sendPaused()
         {
-            _loopingState = PlayStatusType.PAUSED;
+            setLoopingState(PlayStatusType.PAUSED);
             super.sendPaused();
         }
 
@@ -1691,35 +3650,12 @@ public class SequencerMain extends PApplet
         {
             if(_loopingState != PlayStatusType.RECORDING)
             {
-                _loopingState = PlayStatusType.PLAYING;
+                setLoopingState(PlayStatusType.PLAYING);
             }
             super.sendPlaying();
         }
     }
 
-    public class MidiNoteInfo
-    {
-        private MidiDevice _midOutDevice;
-        private ShortMessage _midiMsg;
-
-        public MidiNoteInfo(MidiDevice midiOutDevice, ShortMessage midiMsg)
-        {
-            _midOutDevice = midiOutDevice;
-            _midiMsg = midiMsg;
-        }
-
-        public MidiDevice getOutDevice()
-        {
-            return _midOutDevice;
-        }
-
-        public ShortMessage getMidiMsg()
-        {
-            return _midiMsg;
-        }
-
-    }
-
     public interface Screen
     {
         void add(ScreenElement element);
@@ -1740,7 +3676,11 @@ public class SequencerMain extends PApplet
         void draw();
 
         void setDirty();
+    }
 
+    // touches only ever reach an element through the hit grid of its screen
+    public interface HitTarget extends ScreenElement
+    {
         void mousePressed(MouseEvent event, InputState inputState);
     }
 }
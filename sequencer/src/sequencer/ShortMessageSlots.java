@@ -0,0 +1,30 @@
+package sequencer;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+public class ShortMessageSlots
+{
+    private ShortMessage[] _slots;
+    private int _next;
+
+    public ShortMessageSlots(int numSlots)
+    {
+        _slots = new ShortMessage[numSlots];
+        for(int slotIdx = 0; slotIdx < numSlots; slotIdx++)
+        {
+            _slots[slotIdx] = new ShortMessage();
+        }
+        _next = 0;
+    }
+
+    // a slot is reused only after all others were handed out, so receivers that keep a reference for a
+    // timestamped send still see their message as long as fewer than numSlots messages are in flight
+    public ShortMessage next(int command, int channel, int data1, int data2) throws InvalidMidiDataException
+    {
+        ShortMessage msg = _slots[_next];
+        _next = (_next + 1) % _slots.length;
+        msg.setMessage(command, channel, data1, data2);
+        return msg;
+    }
+}
@@ -0,0 +1,392 @@
+package sequencer;
+
+import processing.core.PConstants;
+import processing.core.PFont;
+
+// rasterizes the few primitives we use into an ARGB pixel array and remembers which regions were touched
+public class SoftwareRenderer implements Renderer
+{
+    private static final int MAX_DAMAGE_RECTS = 32;
+    private static final int OPAQUE = 0xFF000000;
+
+    protected int _width;
+    protected int _height;
+    protected int[] _pixels;
+
+    private int _fillColor;
+    private int _strokeColor;
+    private boolean _stroke;
+    private int _textAlign;
+    private float _translateX;
+    private float _translateY;
+
+    // damaged regions as x0, y0, x1, y1 with exclusive ends
+    private int[] _damage;
+    private int _damageCount;
+
+    public SoftwareRenderer(int width, int height)
+    {
+        _width = width;
+        _height = height;
+        _pixels = new int[width * height];
+        _fillColor = OPAQUE | 0xFFFFFF;
+        _strokeColor = OPAQUE;
+        _stroke = true;
+        _textAlign = PConstants.LEFT;
+        _damage = new int[MAX_DAMAGE_RECTS * 4];
+        _damageCount = 0;
+    }
+
+    public int getWidth()
+    {
+        return _width;
+    }
+
+    public int getHeight()
+    {
+        return _height;
+    }
+
+    public int getPixel(int x, int y)
+    {
+        return _pixels[y * _width + x];
+    }
+
+    @Override
+    public void beginDraw()
+    {
+        _translateX = 0;
+        _translateY = 0;
+    }
+
+    @Override
+    public void endDraw()
+    {
+    }
+
+    @Override
+    public void background(int gray)
+    {
+        int color = grayColor(gray);
+        for(int pixelIdx = 0; pixelIdx < _pixels.length; pixelIdx++)
+        {
+            _pixels[pixelIdx] = color;
+        }
+        damage(0, 0, _width, _height);
+    }
+
+    @Override
+    public void fill(int gray)
+    {
+        _fillColor = grayColor(gray);
+    }
+
+    @Override
+    public void fill(int red, int green, int blue)
+    {
+        _fillColor = OPAQUE | (clampChannel(red) << 16) | (clampChannel(green) << 8) | clampChannel(blue);
+    }
+
+    @Override
+    public void stroke(int gray)
+    {
+        _strokeColor = grayColor(gray);
+        _stroke = true;
+    }
+
+    @Override
+    public void noStroke()
+    {
+        _stroke = false;
+    }
+
+    @Override
+    public void translate(float x, float y)
+    {
+        _translateX += x;
+        _translateY += y;
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height)
+    {
+        int left = Math.round(x + _translateX);
+        int top = Math.round(y + _translateY);
+        int right = left + Math.round(width);
+        int bottom = top + Math.round(height);
+        for(int row = top; row < bottom; row++)
+        {
+            span(row, left, right, _fillColor);
+        }
+        if(_stroke)
+        {
+            span(top, left, right + 1, _strokeColor);
+            span(bottom, left, right + 1, _strokeColor);
+            for(int row = top; row <= bottom; row++)
+            {
+                span(row, left, left + 1, _strokeColor);
+                span(row, right, right + 1, _strokeColor);
+            }
+        }
+    }
+
+    @Override
+    public void rect(float x, float y, float width, float height, float radius)
+    {
+        int left = Math.round(x + _translateX);
+        int top = Math.round(y + _translateY);
+        int right = left + Math.round(width);
+        int bottom = top + Math.round(height);
+        float cornerRadius = Math.min(radius, Math.min(width, height) / 2);
+        for(int row = top; row < bottom; row++)
+        {
+            float intoCorner = Math.max(top + cornerRadius - (row + 0.5f), (row + 0.5f) - (bottom - cornerRadius));
+            int inset = 0;
+            if(intoCorner > 0)
+            {
+                inset = Math.round(cornerRadius - (float)Math.sqrt(cornerRadius * cornerRadius - intoCorner * intoCorner));
+            }
+            span(row, left + inset, right - inset, _fillColor);
+            if(_stroke)
+            {
+                span(row, left + inset, left + inset + 1, _strokeColor);
+                span(row, right - inset - 1, right - inset, _strokeColor);
+            }
+        }
+    }
+
+    @Override
+    public void line(float x1, float y1, float x2, float y2)
+    {
+        if(!_stroke)
+        {
+            return;
+        }
+        int x = Math.round(x1 + _translateX);
+        int y = Math.round(y1 + _translateY);
+        int endX = Math.round(x2 + _translateX);
+        int endY = Math.round(y2 + _translateY);
+        int deltaX = Math.abs(endX - x);
+        int deltaY = -Math.abs(endY - y);
+        int stepX = x < endX ? 1 : -1;
+        int stepY = y < endY ? 1 : -1;
+        int error = deltaX + deltaY;
+        while(true)
+        {
+            span(y, x, x + 1, _strokeColor);
+            if(x == endX && y == endY)
+            {
+                break;
+            }
+            int doubledError = 2 * error;
+            if(doubledError >= deltaY)
+            {
+                error += deltaY;
+                x += stepX;
+            }
+            if(doubledError <= deltaX)
+            {
+                error += deltaX;
+                y += stepY;
+            }
+        }
+    }
+
+    @Override
+    public void ellipse(float x, float y, float width, float height)
+    {
+        float centerX = x + _translateX;
+        float centerY = y + _translateY;
+        float radiusX = width / 2;
+        float radiusY = height / 2;
+        if(radiusX <= 0 || radiusY <= 0)
+        {
+            return;
+        }
+        int top = (int)Math.floor(centerY - radiusY);
+        int bottom = (int)Math.ceil(centerY + radiusY);
+        for(int row = top; row < bottom; row++)
+        {
+            float offsetY = (row + 0.5f - centerY) / radiusY;
+            if(offsetY * offsetY > 1)
+            {
+                continue;
+            }
+            float halfWidth = radiusX * (float)Math.sqrt(1 - offsetY * offsetY);
+            int left = Math.round(centerX - halfWidth);
+            int right = Math.round(centerX + halfWidth);
+            span(row, left, right, _fillColor);
+            if(_stroke)
+            {
+                span(row, left, left + 1, _strokeColor);
+                span(row, right - 1, right, _strokeColor);
+            }
+        }
+    }
+
+    @Override
+    public void textFont(PFont font)
+    {
+        // there is only the built in bitmap font
+    }
+
+    @Override
+    public void textAlign(int alignX)
+    {
+        _textAlign = alignX;
+    }
+
+    @Override
+    public void text(String text, float x, float y)
+    {
+        int left = Math.round(x + _translateX);
+        if(_textAlign == PConstants.CENTER)
+        {
+            left -= BitmapFont.textWidth(text) / 2;
+        }
+        else if(_textAlign == PConstants.RIGHT)
+        {
+            left -= BitmapFont.textWidth(text);
+        }
+        // y is the baseline like in Processing
+        int top = Math.round(y + _translateY) - BitmapFont.GLYPH_HEIGHT;
+        for(int charIdx = 0; charIdx < text.length(); charIdx++)
+        {
+            int glyphLeft = left + charIdx * BitmapFont.ADVANCE;
+            for(int column = 0; column < BitmapFont.GLYPH_WIDTH; column++)
+            {
+                for(int row = 0; row < BitmapFont.GLYPH_HEIGHT; row++)
+                {
+                    if(BitmapFont.isPixelSet(text.charAt(charIdx), column, row))
+                    {
+                        span(top + row, glyphLeft + column, glyphLeft + column + 1, _fillColor);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Renderer createLayer(int width, int height)
+    {
+        // pixels start out transparent so rounded corners keep what is underneath
+        return new SoftwareRenderer(width, height);
+    }
+
+    @Override
+    public void drawLayer(Renderer layer, float x, float y)
+    {
+        SoftwareRenderer source = (SoftwareRenderer)layer;
+        int left = Math.round(x + _translateX);
+        int top = Math.round(y + _translateY);
+        int firstRow = Math.max(0, -top);
+        int lastRow = Math.min(source._height, _height - top);
+        int firstColumn = Math.max(0, -left);
+        int lastColumn = Math.min(source._width, _width - left);
+        for(int row = firstRow; row < lastRow; row++)
+        {
+            int sourceIdx = row * source._width;
+            int targetIdx = (top + row) * _width + left;
+            for(int column = firstColumn; column < lastColumn; column++)
+            {
+                int color = source._pixels[sourceIdx + column];
+                if((color & OPAQUE) != 0)
+                {
+                    _pixels[targetIdx + column] = color;
+                }
+            }
+        }
+        damage(left + firstColumn, top + firstRow, left + lastColumn, top + lastRow);
+    }
+
+    public int getDamageCount()
+    {
+        return _damageCount;
+    }
+
+    public int getDamage(int damageIdx, int coordinate)
+    {
+        return _damage[damageIdx * 4 + coordinate];
+    }
+
+    public void clearDamage()
+    {
+        _damageCount = 0;
+    }
+
+    private void span(int row, int left, int right, int color)
+    {
+        if(row < 0 || row >= _height)
+        {
+            return;
+        }
+        int from = Math.max(0, left);
+        int to = Math.min(_width, right);
+        if(from >= to)
+        {
+            return;
+        }
+        int rowStart = row * _width;
+        for(int column = from; column < to; column++)
+        {
+            _pixels[rowStart + column] = color;
+        }
+        damage(from, row, to, row + 1);
+    }
+
+    protected void damage(int x0, int y0, int x1, int y1)
+    {
+        if(x0 >= x1 || y0 >= y1)
+        {
+            return;
+        }
+        // most primitives are drawn span by span, grow the last region as long as it stays a rectangle
+        if(_damageCount > 0)
+        {
+            int last = (_damageCount - 1) * 4;
+            if(x0 >= _damage[last] && x1 <= _damage[last + 2] && y0 >= _damage[last + 1] && y1 <= _damage[last + 3])
+            {
+                return;
+            }
+            if(y0 <= _damage[last + 3] && y1 >= _damage[last + 1] && x0 <= _damage[last + 2] && x1 >= _damage[last])
+            {
+                _damage[last] = Math.min(_damage[last], x0);
+                _damage[last + 1] = Math.min(_damage[last + 1], y0);
+                _damage[last + 2] = Math.max(_damage[last + 2], x1);
+                _damage[last + 3] = Math.max(_damage[last + 3], y1);
+                return;
+            }
+        }
+        if(_damageCount == MAX_DAMAGE_RECTS)
+        {
+            // too many separate regions, fold them all into their bounding box
+            for(int damageIdx = 1; damageIdx < _damageCount; damageIdx++)
+            {
+                _damage[0] = Math.min(_damage[0], _damage[damageIdx * 4]);
+                _damage[1] = Math.min(_damage[1], _damage[damageIdx * 4 + 1]);
+                _damage[2] = Math.max(_damage[2], _damage[damageIdx * 4 + 2]);
+                _damage[3] = Math.max(_damage[3], _damage[damageIdx * 4 + 3]);
+            }
+            _damageCount = 1;
+            damage(x0, y0, x1, y1);
+            return;
+        }
+        int next = _damageCount * 4;
+        _damage[next] = x0;
+        _damage[next + 1] = y0;
+        _damage[next + 2] = x1;
+        _damage[next + 3] = y1;
+        _damageCount++;
+    }
+
+    private static int grayColor(int gray)
+    {
+        int channel = clampChannel(gray);
+        return OPAQUE | (channel << 16) | (channel << 8) | channel;
+    }
+
+    private static int clampChannel(int value)
+    {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,154 @@
+package sequencer;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class StepClock implements Runnable
+{
+    private static final long SPIN_THRESHOLD_NANOS = 200000;
+    private static final long MAX_LATENESS_NANOS = 1000000000L;
+
+    private TickListener _listener;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    private volatile long _lookaheadNanos;
+    private volatile double _requestedNanosPerTick;
+    private double _nanosPerTick;
+    private long _anchorNanos;
+    private long _anchorTick;
+    private long _tick;
+
+    private volatile long _lateTicks;
+    private volatile long _maxLatenessNanos;
+
+    public interface TickListener
+    {
+        void tick(long tickNr, long tickTimeNanos);
+    }
+
+    public StepClock(TickListener listener)
+    {
+        _listener = listener;
+        _running = false;
+    }
+
+    public static double nanosPerTick(double beatsPerMinute, int ticksPerBeat)
+    {
+        return 60000000000.0 / (beatsPerMinute * ticksPerBeat);
+    }
+
+    public void setTempo(double beatsPerMinute, int ticksPerBeat)
+    {
+        _requestedNanosPerTick = nanosPerTick(beatsPerMinute, ticksPerBeat);
+    }
+
+    public double getNanosPerTick()
+    {
+        return _requestedNanosPerTick;
+    }
+
+    public void setLookahead(long lookaheadNanos)
+    {
+        _lookaheadNanos = lookaheadNanos;
+    }
+
+    public long getLookahead()
+    {
+        return _lookaheadNanos;
+    }
+
+    public void start()
+    {
+        if(_running)
+        {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this, "step-clock");
+        _thread.setPriority(Thread.MAX_PRIORITY);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void stop()
+    {
+        _running = false;
+        if(_thread != null)
+        {
+            LockSupport.unpark(_thread);
+        }
+    }
+
+    public long getLateTicks()
+    {
+        return _lateTicks;
+    }
+
+    public long getMaxLatenessNanos()
+    {
+        return _maxLatenessNanos;
+    }
+
+    @Override
+    public void run()
+    {
+        _nanosPerTick = _requestedNanosPerTick;
+        _tick = 0;
+        _anchorTick = 0;
+        _anchorNanos = System.nanoTime() + _lookaheadNanos;
+        while(_running)
+        {
+            if(_nanosPerTick != _requestedNanosPerTick)
+            {
+                // re-anchor on the tick we are about to play so a tempo change never shifts past ticks
+                _anchorNanos = deadlineOf(_tick);
+                _anchorTick = _tick;
+                _nanosPerTick = _requestedNanosPerTick;
+            }
+            long deadline = deadlineOf(_tick);
+            // wake up ahead of the tick, listeners hand the tick time on to devices that can schedule it
+            long wakeUp = deadline - _lookaheadNanos;
+            waitUntil(wakeUp);
+            if(!_running)
+            {
+                break;
+            }
+            long lateness = System.nanoTime() - wakeUp;
+            if(lateness > _maxLatenessNanos)
+            {
+                _maxLatenessNanos = lateness;
+            }
+            if(lateness > _nanosPerTick)
+            {
+                _lateTicks++;
+            }
+            _listener.tick(_tick, deadline);
+            _tick++;
+            if(lateness > MAX_LATENESS_NANOS)
+            {
+                // we were suspended, don't fire a burst of catch-up ticks
+                _anchorNanos = System.nanoTime() + _lookaheadNanos;
+                _anchorTick = _tick;
+            }
+        }
+    }
+
+    private long deadlineOf(long tick)
+    {
+        return _anchorNanos + Math.round((tick - _anchorTick) * _nanosPerTick);
+    }
+
+    private void waitUntil(long deadline)
+    {
+        long remaining = deadline - System.nanoTime();
+        while(_running && remaining > SPIN_THRESHOLD_NANOS)
+        {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            remaining = deadline - System.nanoTime();
+        }
+        while(_running && System.nanoTime() - deadline < 0)
+        {
+            // spin for the last fraction of a millisecond, parkNanos is too coarse for that
+        }
+    }
+}
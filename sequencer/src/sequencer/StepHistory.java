@@ -0,0 +1,62 @@
+package sequencer;
+
+public class StepHistory
+{
+    private long[] _stepTimes;
+    private int[] _steps;
+    private int _next;
+    private int _count;
+
+    public StepHistory(int size)
+    {
+        _stepTimes = new long[size];
+        _steps = new int[size];
+        clear();
+    }
+
+    public void clear()
+    {
+        _next = 0;
+        _count = 0;
+    }
+
+    public void record(int step, long stepTimeNanos)
+    {
+        _stepTimes[_next] = stepTimeNanos;
+        _steps[_next] = step;
+        _next = (_next + 1) % _steps.length;
+        if(_count < _steps.length)
+        {
+            _count++;
+        }
+    }
+
+    // step whose play time is closest to eventNanos, upcomingStep is the step after the last recorded one
+    public int nearestStep(long eventNanos, int upcomingStep)
+    {
+        if(_count == 0)
+        {
+            return upcomingStep;
+        }
+        int lastIdx = (_next - 1 + _steps.length) % _steps.length;
+        int nearest = upcomingStep;
+        long nearestDistance = Long.MAX_VALUE;
+        if(_count > 1)
+        {
+            int prevIdx = (lastIdx - 1 + _steps.length) % _steps.length;
+            long upcomingTime = 2 * _stepTimes[lastIdx] - _stepTimes[prevIdx];
+            nearestDistance = Math.abs(eventNanos - upcomingTime);
+        }
+        for(int historyIdx = 0; historyIdx < _count; historyIdx++)
+        {
+            int idx = (lastIdx - historyIdx + _steps.length) % _steps.length;
+            long distance = Math.abs(eventNanos - _stepTimes[idx]);
+            if(distance < nearestDistance)
+            {
+                nearestDistance = distance;
+                nearest = _steps[idx];
+            }
+        }
+        return nearest;
+    }
+}
@@ -5,15 +5,16 @@ import java.awt.Rectangle;
 import processing.core.PApplet;
 import processing.core.PVector;
 import processing.event.MouseEvent;
+import sequencer.PatternEdit.EditType;
 import sequencer.SequencerMain.InputState;
 import sequencer.SequencerMain.PlayStatus;
-import sequencer.SequencerMain.ScreenElement;
+import sequencer.SequencerMain.HitTarget;
 import sequencer.SequencerMain.SeqButton;
 import sequencer.SequencerMain.TrackModel;
 
-public class StepSequencerBar implements ScreenElement
+public class StepSequencerBar implements HitTarget
 {
-    private PApplet _p;
+    private Renderer _renderer;
     protected PVector _insets;
     protected float _width;
     protected PVector _corner;
@@ -28,21 +29,29 @@ public class StepSequencerBar implements ScreenElement
     protected InstrumentSelectButton _instrumentSelectButton;
     
     protected TrackModel _trackModel;
+    private PlaySnapshot _playSnapshot;
     private int _steps;
+    private int _visibleSteps;
+    private int _firstStep;
     private boolean _isDirty;
+    private TrackSnapshot _drawnSnapshot;
+    private int _drawnPlayedStep;
 
     public StepSequencerBar(Rectangle barArea, PVector insets, TrackModel trackModel, SequencerMain mainApp)
     {
         _trackModel = trackModel;
+        _playSnapshot = mainApp.getPlaySnapshot();
         _steps = trackModel.getNumberOfSteps();
+        _visibleSteps = Math.min(_steps, mainApp.getConfig().getVisibleSteps());
+        _firstStep = 0;
 
-        _p = mainApp;
+        _renderer = mainApp.getRenderer();
         _insets = insets;
         _width = barArea.width;
         _corner = new PVector(barArea.x, barArea.y);
         _buttonHeight = barArea.height  - 2 * _insets.y;
         _controlsWidth = 60;
-        _buttonWidth = (_width - 2 * _insets.x - _controlsWidth )/trackModel.getNumberOfSteps();
+        _buttonWidth = (_width - 2 * _insets.x - _controlsWidth )/_visibleSteps;
         _inactiveColor = 255;
         _activeColor = 32;
         _beatColor = 128;
@@ -51,63 +60,126 @@ public class StepSequencerBar implements ScreenElement
         _instrumentSelectButton = new InstrumentSelectButton(mainApp, mainApp, new Rectangle((int)(_corner.x + insets.x), (int)(_corner.y + insets.y) + 40, 40, ctrlButtonHeight), null, null);
         _inputState = mainApp.getInputState();
         _isDirty = true;
+        _drawnPlayedStep = -1;
     }
 
     @Override
     public void draw()
     {
+        TrackSnapshot snapshot = _trackModel.getSnapshot();
+        int playedStep = _playSnapshot.getTrackStep(_trackModel.getTrackIndex());
+        int endStep = getEndOfVisibleSteps();
         if(_isDirty)
         {
-            int prevCol = _p.getGraphics().fillColor;
-            _p.fill(_inactiveColor);
-            for(int stepIdx = 0; stepIdx < _steps; stepIdx++)
+            for(int stepIdx = _firstStep; stepIdx < endStep; stepIdx++)
             {
-                if(!_trackModel.isCurrentStep(stepIdx))
+                drawStep(snapshot, stepIdx, playedStep);
+            }
+            _isDirty = false;
+        }
+        else
+        {
+            // only repaint the cells that changed since the last frame, a playhead move is two cells
+            if(snapshot != _drawnSnapshot)
+            {
+                for(int stepIdx = _firstStep; stepIdx < endStep; stepIdx++)
                 {
-                    if(_trackModel.isStepActive(stepIdx))
-                    {
-                        _p.fill(0, 0, 255);
-                    }
-                    else 
+                    if(hasStepChanged(_drawnSnapshot, snapshot, stepIdx))
                     {
-                        if(_trackModel.isFirstStepInBeat(stepIdx))
-                        {
-                            _p.fill(_beatColor);
-                            if(_trackModel.isCurrentMaxStep(stepIdx))
-                            {
-                                _p.fill(128, 0, 255);
-                            }
-                        }
-                        else
-                        {
-                            _p.fill(_inactiveColor);
-                            if(_trackModel.isCurrentMaxStep(stepIdx))
-                            {
-                                _p.fill(128, 0, 255);
-                            }
-                        }
+                        drawStep(snapshot, stepIdx, playedStep);
                     }
                 }
-                else
-                {
-                    _p.fill(_activeColor);
-                }
-                _p.rect(stepIdx * _buttonWidth + _insets.x + _corner.x + _controlsWidth, _insets.y + _corner.y, _buttonWidth, _buttonHeight);
             }
-            _p.fill(prevCol);
-            if(_isDirty)
+            if(playedStep != _drawnPlayedStep)
             {
-                _isDirty = false;
+                if(isVisible(_drawnPlayedStep))
+                {
+                    drawStep(snapshot, _drawnPlayedStep, playedStep);
+                }
+                if(isVisible(playedStep))
+                {
+                    drawStep(snapshot, playedStep, playedStep);
+                }
             }
         }
+        if(snapshot != _drawnSnapshot)
+        {
+            setControlsDirty();
+        }
+        _drawnSnapshot = snapshot;
+        _drawnPlayedStep = playedStep;
         _muteButton.draw();
         _instrumentSelectButton.draw();
     }
     
+    private int getEndOfVisibleSteps()
+    {
+        return Math.min(_steps, _firstStep + _visibleSteps);
+    }
+
+    private boolean isVisible(int stepIdx)
+    {
+        return stepIdx >= _firstStep && stepIdx < getEndOfVisibleSteps();
+    }
+
+    public void setFirstStep(int firstStep)
+    {
+        _firstStep = firstStep;
+        _isDirty = true;
+    }
+
+    private boolean hasStepChanged(TrackSnapshot drawn, TrackSnapshot current, int stepIdx)
+    {
+        return drawn == null
+                || drawn.isStepActive(stepIdx) != current.isStepActive(stepIdx)
+                || drawn.getGate(stepIdx) != current.getGate(stepIdx)
+                || drawn.isCurrentMaxStep(stepIdx) != current.isCurrentMaxStep(stepIdx);
+    }
+
+    private void drawStep(TrackSnapshot snapshot, int stepIdx, int playedStep)
+    {
+        if(stepIdx != playedStep)
+        {
+            if(snapshot.isStepActive(stepIdx))
+            {
+                if(_trackModel.isDefaultGateLength(snapshot.getGate(stepIdx)))
+                {
+                    _renderer.fill(0, 0, 255);
+                }
+                else if(_trackModel.isShortGateLength(snapshot.getGate(stepIdx)))
+                {
+                    _renderer.fill(96, 96, 255);
+                }
+                else
+                {
+                    _renderer.fill(0, 0, 160);
+                }
+            }
+            else 
+            {
+                if(_trackModel.isFirstStepInBeat(stepIdx))
+                {
+                    _renderer.fill(_beatColor);
+                }
+                else
+                {
+                    _renderer.fill(_inactiveColor);
+                }
+                if(snapshot.isCurrentMaxStep(stepIdx))
+                {
+                    _renderer.fill(128, 0, 255);
+                }
+            }
+        }
+        else
+        {
+            _renderer.fill(_activeColor);
+        }
+        _renderer.rect((stepIdx - _firstStep) * _buttonWidth + _insets.x + _corner.x + _controlsWidth, _insets.y + _corner.y, _buttonWidth, _buttonHeight);
+    }
+
     public void mousePressed(MouseEvent event, InputState inputState) 
     {
-        _muteButton.mousePressed(event, inputState);
-        _instrumentSelectButton.mousePressed(event, inputState);
         int mouseY = event.getY();
         float cornerY = _corner.y + _insets.y;
         if(mouseY > cornerY && mouseY < (cornerY + _buttonHeight))
@@ -118,14 +190,13 @@ public class StepSequencerBar implements ScreenElement
                 switch (_inputState.getState())
                 {
                     case REGULAR:
-                        _trackModel.toggleActivationState(activatedButton);
-                        _isDirty = true;
-                        _p.redraw();
+                        _trackModel.submit(EditType.TOGGLE_STEP, activatedButton, 0);
                         break;
                     case STEP_LENGTH_SELECT_ENABLED:
                         setNewMaxSteps(inputState, activatedButton);
-                        _isDirty = true;
-                        _p.redraw();
+                        break;
+                    case GATE_SELECT_ENABLED:
+                        _trackModel.submit(EditType.CYCLE_GATE, activatedButton, 0);
                         break;
                     default:
                         break;
@@ -136,27 +207,37 @@ public class StepSequencerBar implements ScreenElement
 
     private void setNewMaxSteps(InputState inputState, int activatedButton)
     {
-        _trackModel.setCurrentMaxSteps(activatedButton + 1);
+        _trackModel.submit(EditType.SET_MAX_STEPS, 0, activatedButton + 1);
         inputState.maxStepsSet();
     }
 
     private int getClickedButtonIdx(MouseEvent event)
     {
-        int activatedButton = -1;
         float offset = _insets.x + _corner.x + _controlsWidth;
-        for(int cnt = 0; cnt < _steps; cnt++)
+        int mouseX = event.getX();
+        if(mouseX <= offset)
         {
-            int mouseX = event.getX();
-            if(mouseX > cnt * _buttonWidth + offset)
-            {
-                if(mouseX < (cnt + 1) * _buttonWidth + offset)
-                {
-                   activatedButton = cnt;
-                   break;
-                }
-            }
+            return -1;
+        }
+        int activatedButton = (int)((mouseX - offset) / _buttonWidth);
+        if(activatedButton >= getEndOfVisibleSteps() - _firstStep || mouseX <= activatedButton * _buttonWidth + offset)
+        {
+            // outside the strip or exactly on the border between two steps
+            return -1;
         }
-        return activatedButton;
+        return _firstStep + activatedButton;
+    }
+
+    public Rectangle getStepArea()
+    {
+        return new Rectangle((int)(_insets.x + _corner.x + _controlsWidth), (int)(_corner.y + _insets.y), (int)Math.ceil(_visibleSteps * _buttonWidth), (int)Math.ceil(_buttonHeight));
+    }
+
+    public void registerHitTargets(HitGrid<HitTarget> hitGrid)
+    {
+        hitGrid.add(_muteButton.getArea(), _muteButton);
+        hitGrid.add(_instrumentSelectButton.getArea(), _instrumentSelectButton);
+        hitGrid.add(getStepArea(), this);
     }
 
     public class InstrumentSelectButton extends SeqButton
@@ -173,9 +254,9 @@ public class StepSequencerBar implements ScreenElement
         }
 
         @Override
-        protected void setColor()
+        protected void setColor(Renderer target)
         {
-            _mainApp.fill(140, 0, 140);
+            target.fill(140, 0, 140);
         }
     }
 
@@ -184,25 +265,30 @@ public class StepSequencerBar implements ScreenElement
         public MuteButton(SequencerMain sequencerMain, PApplet mainApp, Rectangle area, PlayStatus playStatus, InputState inputState)
         {
             sequencerMain.super(mainApp, area, playStatus, inputState);
-            _trackModel.setMuteStatus(false);
         }
 
         @Override
         protected void buttonPressed(InputState inputState)
         {
-            _trackModel.setMuteStatus(!_trackModel.isMuted());
+            _trackModel.submit(EditType.SET_MUTE, 0, _trackModel.getSnapshot().isMuted() ? 0 : 1);
         }
 
         @Override
-        protected void setColor()
+        protected int getLayerState()
         {
-            if(_trackModel.isMuted())
+            return _trackModel.getSnapshot().isMuted() ? 1 : 0;
+        }
+
+        @Override
+        protected void setColor(Renderer target)
+        {
+            if(_trackModel.getSnapshot().isMuted())
             {
-                _mainApp.fill(255, 0, 0);
+                target.fill(255, 0, 0);
             }
             else
             {
-                _mainApp.fill(128);
+                target.fill(128);
             }
         }
     }
@@ -216,6 +302,11 @@ public class StepSequencerBar implements ScreenElement
     public void setDirty()
     {
         _isDirty = true;
+        setControlsDirty();
+    }
+
+    protected void setControlsDirty()
+    {
         _muteButton.setDirty();
         _instrumentSelectButton.setDirty();
     }
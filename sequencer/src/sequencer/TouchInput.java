@@ -0,0 +1,120 @@
+package sequencer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// reads touches from a linux input device (/dev/input/eventN) when there is no window to get mouse events from
+public class TouchInput implements Runnable
+{
+    private static final int EV_SYN = 0x00;
+    private static final int EV_KEY = 0x01;
+    private static final int EV_ABS = 0x03;
+    private static final int SYN_REPORT = 0x00;
+    private static final int BTN_TOUCH = 0x14A;
+    private static final int BTN_LEFT = 0x110;
+    private static final int ABS_X = 0x00;
+    private static final int ABS_Y = 0x01;
+    private static final int ABS_MT_POSITION_X = 0x35;
+    private static final int ABS_MT_POSITION_Y = 0x36;
+
+    private String _devicePath;
+    private int _eventSize;
+    private int _screenWidth;
+    private int _screenHeight;
+    private int _maxX;
+    private int _maxY;
+    private ConcurrentLinkedQueue<int[]> _touches;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    public TouchInput(String devicePath, int screenWidth, int screenHeight)
+    {
+        _devicePath = devicePath;
+        // struct input_event starts with a struct timeval, which is twice as big on 64 bit systems
+        _eventSize = Integer.getInteger("sequencer.inputEventSize", "64".equals(System.getProperty("sun.arch.data.model")) ? 24 : 16);
+        _screenWidth = screenWidth;
+        _screenHeight = screenHeight;
+        _maxX = Integer.getInteger("sequencer.touchMaxX", screenWidth);
+        _maxY = Integer.getInteger("sequencer.touchMaxY", screenHeight);
+        _touches = new ConcurrentLinkedQueue<>();
+    }
+
+    public void start()
+    {
+        _running = true;
+        _thread = new Thread(this, "touch-input");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void stop()
+    {
+        _running = false;
+    }
+
+    // screen position of the next touch as {x, y}, or null
+    public int[] poll()
+    {
+        return _touches.poll();
+    }
+
+    @Override
+    public void run()
+    {
+        byte[] event = new byte[_eventSize];
+        ByteBuffer eventBuffer = ByteBuffer.wrap(event).order(ByteOrder.LITTLE_ENDIAN);
+        int rawX = 0;
+        int rawY = 0;
+        boolean touchStarted = false;
+        try (InputStream input = new FileInputStream(_devicePath))
+        {
+            while(_running && readFully(input, event))
+            {
+                int type = eventBuffer.getShort(_eventSize - 8) & 0xFFFF;
+                int code = eventBuffer.getShort(_eventSize - 6) & 0xFFFF;
+                int value = eventBuffer.getInt(_eventSize - 4);
+                if(type == EV_ABS && (code == ABS_X || code == ABS_MT_POSITION_X))
+                {
+                    rawX = value;
+                }
+                else if(type == EV_ABS && (code == ABS_Y || code == ABS_MT_POSITION_Y))
+                {
+                    rawY = value;
+                }
+                else if(type == EV_KEY && (code == BTN_TOUCH || code == BTN_LEFT) && value == 1)
+                {
+                    touchStarted = true;
+                }
+                else if(type == EV_SYN && code == SYN_REPORT && touchStarted)
+                {
+                    // the position of a touch is only complete with the report that follows the button event
+                    touchStarted = false;
+                    _touches.add(new int[]{rawX * _screenWidth / Math.max(1, _maxX), rawY * _screenHeight / Math.max(1, _maxY)});
+                }
+            }
+        }
+        catch (IOException exc)
+        {
+            exc.printStackTrace();
+        }
+    }
+
+    private static boolean readFully(InputStream input, byte[] buffer) throws IOException
+    {
+        int read = 0;
+        while(read < buffer.length)
+        {
+            int count = input.read(buffer, read, buffer.length - read);
+            if(count < 0)
+            {
+                return false;
+            }
+            read += count;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package sequencer;
+
+import javax.sound.midi.MidiDevice.Info;
+
+// immutable view of one track for the UI, a new one is published by the sequencer thread after every edit
+public class TrackSnapshot
+{
+    private final long _version;
+    private final PatternStore _pattern;
+    private final int _maxSteps;
+    private final int _note;
+    private final int _channel;
+    private final boolean _muted;
+    private final boolean _arpeggiatorOn;
+    private final boolean _recording;
+    private final Info _deviceInfo;
+
+    public TrackSnapshot(long version, PatternStore pattern, int maxSteps, int note, int channel, boolean muted, boolean arpeggiatorOn, boolean recording, Info deviceInfo)
+    {
+        _version = version;
+        // no copy, the sequencer thread copies the store before it writes to it again
+        _pattern = pattern.share();
+        _maxSteps = maxSteps;
+        _note = note;
+        _channel = channel;
+        _muted = muted;
+        _arpeggiatorOn = arpeggiatorOn;
+        _recording = recording;
+        _deviceInfo = deviceInfo;
+    }
+
+    public long getVersion()
+    {
+        return _version;
+    }
+
+    public boolean isStepActive(int stepIdx)
+    {
+        return _pattern.isActive(stepIdx);
+    }
+
+    public int getGate(int stepIdx)
+    {
+        return _pattern.getGate(stepIdx);
+    }
+
+    public int getMaxSteps()
+    {
+        return _maxSteps;
+    }
+
+    public boolean isCurrentMaxStep(int stepIdx)
+    {
+        return stepIdx == _maxSteps;
+    }
+
+    public int getNote()
+    {
+        return _note;
+    }
+
+    public int getChannel()
+    {
+        return _channel;
+    }
+
+    public boolean isMuted()
+    {
+        return _muted;
+    }
+
+    public boolean isArpeggiatorOn()
+    {
+        return _arpeggiatorOn;
+    }
+
+    public boolean isRecording()
+    {
+        return _recording;
+    }
+
+    public Info getDeviceInfo()
+    {
+        return _deviceInfo;
+    }
+}